@@ -0,0 +1,134 @@
+package tutorial2;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible problems for the benchmarks.
+ * 
+ * @author lackofcheese
+ */
+public class BenchmarkProblems {
+	/** The length of the first rod, as in the bundled problem.txt */
+	public static final double LENGTH1 = 0.2;
+	/** The length of the second rod, as in the bundled problem.txt */
+	public static final double LENGTH2 = 0.3;
+
+	/**
+	 * Creates a problem with the given number of randomly placed obstacles,
+	 * and valid initial and goal states on opposite sides of the workspace;
+	 * the same seed always gives the same problem.
+	 * 
+	 * @param numObstacles
+	 *            the number of obstacles.
+	 * @param seed
+	 *            the seed for placing the obstacles.
+	 * @return the problem, already loaded.
+	 * @throws IOException
+	 *             if the temporary problem file can't be written or read.
+	 */
+	public static ProblemSpec createProblem(int numObstacles, long seed)
+			throws IOException {
+		Random random = new Random(seed);
+		// Obstacles shrink as they become more numerous, so that roughly the
+		// same fraction of the workspace is covered.
+		double maxSize = Math.min(0.15, 0.6 / Math.sqrt(numObstacles + 1));
+		List<Obstacle> obstacles = new ArrayList<Obstacle>();
+		while (obstacles.size() < numObstacles) {
+			double w = maxSize * (0.2 + 0.8 * random.nextDouble());
+			double h = maxSize * (0.2 + 0.8 * random.nextDouble());
+			double x = random.nextDouble() * (1 - w);
+			double y = random.nextDouble() * (1 - h);
+			// Keep clear of the base of the arm, or nothing is valid.
+			if (x < 0.55 && x + w > 0.45 && y < 0.55 && y + h > 0.45) {
+				continue;
+			}
+			obstacles.add(new Obstacle(x, y, w, h));
+		}
+		CollisionChecker checker = new CollisionChecker(LENGTH1, LENGTH2,
+				obstacles);
+		RobotArmState initialState, goalState;
+		do {
+			initialState = StateTools.createRandomState(random, LENGTH1,
+					LENGTH2);
+		} while (!checker.isValidState(initialState)
+				|| initialState.getAngle1() > 0);
+		do {
+			goalState = StateTools.createRandomState(random, LENGTH1, LENGTH2);
+		} while (!checker.isValidState(goalState) || goalState.getAngle1() < 0);
+
+		File file = File.createTempFile("t2-bench", ".txt");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(LENGTH1 + " " + LENGTH2 + "\n");
+			for (RobotArmState s : new RobotArmState[] { initialState,
+					goalState }) {
+				writer.write(Math.toDegrees(s.getAngle1()) + " "
+						+ Math.toDegrees(s.getAngle2()) + "\n");
+			}
+			for (Obstacle o : obstacles) {
+				Rectangle2D r = o.getRect();
+				writer.write(r.getMinX() + " " + r.getMinY() + " "
+						+ r.getMaxX() + " " + r.getMinY() + " " + r.getMaxX()
+						+ " " + r.getMaxY() + " " + r.getMinX() + " "
+						+ r.getMaxY() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		ProblemSpec ps = new ProblemSpec();
+		ps.loadProblem(file.getPath());
+		return ps;
+	}
+
+	/**
+	 * Returns the given number of random states; the same seed always gives
+	 * the same states.
+	 * 
+	 * @param count
+	 *            the number of states.
+	 * @param seed
+	 *            the seed for the states.
+	 * @return the states.
+	 */
+	public static RobotArmState[] createStates(int count, long seed) {
+		Random random = new Random(seed);
+		RobotArmState[] states = new RobotArmState[count];
+		for (int i = 0; i < count; i++) {
+			states[i] = StateTools.createRandomState(random, LENGTH1, LENGTH2);
+		}
+		return states;
+	}
+
+	/**
+	 * Returns the given number of states, each a small random step away from
+	 * the corresponding state in the given array, as a roadmap edge would be.
+	 * 
+	 * @param states
+	 *            the states to step from.
+	 * @param maxAngleDelta
+	 *            the maximum step in each angle, in degrees.
+	 * @param seed
+	 *            the seed for the steps.
+	 * @return the stepped states.
+	 */
+	public static RobotArmState[] createNeighbours(RobotArmState[] states,
+			double maxAngleDelta, long seed) {
+		Random random = new Random(seed);
+		double maxStep = Math.toRadians(maxAngleDelta);
+		RobotArmState[] neighbours = new RobotArmState[states.length];
+		for (int i = 0; i < states.length; i++) {
+			neighbours[i] = new RobotArmState(LENGTH1, LENGTH2,
+					states[i].getAngle1() + (random.nextDouble() - 0.5)
+							* maxStep, states[i].getAngle2()
+							+ (random.nextDouble() - 0.5) * maxStep);
+		}
+		return neighbours;
+	}
+}
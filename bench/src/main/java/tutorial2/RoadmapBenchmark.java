@@ -0,0 +1,81 @@
+package tutorial2;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import search.algorithms.AStarSearch;
+
+/**
+ * Benchmarks a complete run of the solver: sampling the states, connecting
+ * the roadmap and searching it, as RobotSolver.main does. The same seed is
+ * used for every invocation, so each one builds the same roadmap.
+ * 
+ * @author lackofcheese
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RoadmapBenchmark {
+	/** The number of obstacles in the workspace */
+	@Param({ "5", "50" })
+	public int numObstacles;
+
+	/** The number of states to sample */
+	@Param({ "1000", "10000" })
+	public int numSamples;
+
+	/** The maximum angle delta between neighbours, in degrees */
+	@Param({ "10" })
+	public double maxAngleDelta;
+
+	private ProblemSpec ps;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ps = BenchmarkProblems.createProblem(numObstacles, 1);
+	}
+
+	/** Samples and connects a fresh roadmap, and links the query into it */
+	private RoadmapQuery buildQuery() {
+		RobotSolver.setProblem(ps);
+		StateTools.setSeed(4);
+		RobotSolver.generateStates(numSamples);
+		RobotSolver.connectStates(maxAngleDelta);
+		return new RoadmapQuery(RobotSolver.getRoadmap(),
+				RobotSolver.getChecker(), ps.getInitialState(),
+				ps.getGoalState());
+	}
+
+	@Benchmark
+	public Object buildAndSearchWithAStarSearch() {
+		RoadmapQuery query = buildQuery();
+		RoadmapStateAdapter adapter = new RoadmapStateAdapter(query,
+				ps.getLength1(), ps.getLength2());
+		RobotArmState goal = adapter.getState(query.getGoalNode());
+		AStarSearch algo = new AStarSearch(adapter.getState(query
+				.getStartNode()), goal, new TotalAngleDeltaHeuristic(goal));
+		algo.verboseSearch();
+		return algo.goalFound() ? algo.getGoalPath() : null;
+	}
+
+	@Benchmark
+	public int[] buildAndSearchWithRoadmapSearch() {
+		return new RoadmapSearch(buildQuery()).findPath();
+	}
+}
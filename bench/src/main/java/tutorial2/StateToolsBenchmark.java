@@ -0,0 +1,116 @@
+package tutorial2;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-state and per-edge operations that dominate roadmap
+ * construction. Each invocation works on the next of a fixed set of random
+ * states, so that the results aren't skewed by a single lucky state.
+ * 
+ * @author lackofcheese
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateToolsBenchmark {
+	/** The number of distinct states cycled through */
+	private static final int NUM_STATES = 1024;
+
+	/** The number of obstacles in the workspace */
+	@Param({ "2", "20", "200" })
+	public int numObstacles;
+
+	/** The maximum angle delta of the edges, in degrees */
+	@Param({ "10" })
+	public double maxAngleDelta;
+
+	private List<Obstacle> obstacles;
+	private Obstacle obstacle;
+	private CollisionChecker checker;
+	private RobotArmState[] states;
+	private RobotArmState[] neighbours;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ProblemSpec ps = BenchmarkProblems.createProblem(numObstacles, 1);
+		obstacles = ps.getObstacles();
+		obstacle = obstacles.get(0);
+		checker = new CollisionChecker(ps);
+		states = BenchmarkProblems.createStates(NUM_STATES, 2);
+		neighbours = BenchmarkProblems.createNeighbours(states,
+				maxAngleDelta, 3);
+	}
+
+	/** Returns the index of the state to use for the next invocation */
+	private int nextIndex() {
+		next = (next + 1) & (NUM_STATES - 1);
+		return next;
+	}
+
+	@Benchmark
+	public boolean isValidState() {
+		return StateTools.isValidState(states[nextIndex()], obstacles);
+	}
+
+	@Benchmark
+	public boolean checkerIsValidState() {
+		return checker.isValidState(states[nextIndex()]);
+	}
+
+	@Benchmark
+	public boolean hasCollision() {
+		return StateTools.hasCollision(states[nextIndex()], obstacle);
+	}
+
+	@Benchmark
+	public boolean hasDirectPath() {
+		int i = nextIndex();
+		return StateTools.hasDirectPath(states[i], neighbours[i], obstacles);
+	}
+
+	@Benchmark
+	public boolean checkerHasDirectPath() {
+		int i = nextIndex();
+		return checker.hasDirectPath(states[i], neighbours[i]);
+	}
+
+	@Benchmark
+	public double interpolate() {
+		int i = nextIndex();
+		// Positions are worked out lazily, so read one to time them too.
+		return StateTools.interpolate(states[i], neighbours[i], 0.375)
+				.getEndX();
+	}
+
+	@Benchmark
+	public double totalAngleDelta() {
+		int i = nextIndex();
+		return StateTools.totalAngleDelta(states[i], neighbours[i]);
+	}
+
+	@Benchmark
+	public double robotArmState() {
+		RobotArmState s = states[nextIndex()];
+		return new RobotArmState(s.getLength1(), s.getLength2(),
+				s.getAngle1(), s.getAngle2()).getEndX();
+	}
+}
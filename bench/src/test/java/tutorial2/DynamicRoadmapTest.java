@@ -0,0 +1,120 @@
+package tutorial2;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that DynamicRoadmap can bring back the parts of an eagerly built
+ * roadmap that a removed obstacle used to block, without the roadmap growing
+ * each time an obstacle moves over the same ground.
+ * 
+ * @author lackofcheese
+ */
+public class DynamicRoadmapTest {
+	/**
+	 * A problem in which two obstacles, above and below the base, stop the
+	 * first rod from turning from pointing right to pointing left.
+	 */
+	private static final String PROBLEM = "0.2 0.3\n" + "0 0\n" + "180 0\n"
+			+ "0.45 0.62 0.55 0.62 0.55 0.9 0.45 0.9\n"
+			+ "0.45 0.1 0.55 0.1 0.55 0.38 0.45 0.38\n";
+
+	@Test
+	public void removedObstacleOpensEagerRoadmap() throws IOException {
+		ProblemSpec ps = loadProblem();
+		DynamicRoadmap dynamic = buildEager(ps);
+		assertNull(findPath(dynamic, ps));
+
+		int numNodes = dynamic.getRoadmap().getNumNodes();
+		assertTrue(dynamic.removeObstacle(0) > 0);
+		assertTrue(dynamic.getRoadmap().getNumNodes() > numNodes);
+		dynamic.recheck();
+		List<RobotArmState> path = findPath(dynamic, ps);
+		assertNotNull(path);
+
+		// The path has to pass through the freed region, with the first rod
+		// pointing up.
+		boolean throughFreed = false;
+		for (RobotArmState s : path) {
+			throughFreed |= Math.abs(s.getAngle1() - Math.PI / 2) < Math.PI / 8;
+		}
+		assertTrue(throughFreed);
+	}
+
+	@Test
+	public void movingBackAndForthStaysBounded() throws IOException {
+		ProblemSpec ps = loadProblem();
+		DynamicRoadmap dynamic = buildEager(ps);
+		int numNodes = dynamic.getRoadmap().getNumNodes();
+		Obstacle home = ps.getObstacles().get(0);
+		Obstacle away = new Obstacle(0.25, 0.62, 0.1, 0.28);
+		int[] counts = new int[21];
+		counts[0] = numNodes;
+		for (int trip = 1; trip < counts.length; trip++) {
+			dynamic.moveObstacle(0, away);
+			dynamic.moveObstacle(0, home);
+			counts[trip] = dynamic.getRoadmap().getNumNodes();
+		}
+
+		// Once the freed regions are sampled, later trips only fill gaps.
+		int firstTrip = counts[1] - counts[0];
+		int lastTrips = counts[20] - counts[10];
+		assertTrue(firstTrip > 0);
+		assertTrue(lastTrips < firstTrip / 2);
+		assertTrue(counts[20] < 2 * numNodes);
+	}
+
+	/**
+	 * Builds an eager roadmap for the given problem, and wraps it.
+	 */
+	private static DynamicRoadmap buildEager(ProblemSpec ps) {
+		RobotSolver.setProblem(ps);
+		StateTools.setSeed(1);
+		RobotSolver.generateStates(RobotSolver.DEFAULT_NUM_SAMPLES);
+		RobotSolver.connectStates(RobotSolver.DEFAULT_MAX_ANGLE_DELTA);
+		return new DynamicRoadmap(RobotSolver.getRoadmap(), ps,
+				new CollisionChecker(ps));
+	}
+
+	/**
+	 * Searches the current roadmap for a path for the given problem.
+	 * 
+	 * @return the states along the path, or null if there is none.
+	 */
+	private static List<RobotArmState> findPath(DynamicRoadmap dynamic,
+			ProblemSpec ps) {
+		RoadmapQuery query = new RoadmapQuery(dynamic.getRoadmap(),
+				dynamic.getChecker(), ps.getInitialState(), ps.getGoalState());
+		int[] ids = new RoadmapSearch(query).findPath();
+		return ids == null ? null : RobotSolver.getPathStates(query, ids);
+	}
+
+	/**
+	 * Loads the test problem from a temporary file.
+	 */
+	private static ProblemSpec loadProblem() throws IOException {
+		File file = File.createTempFile("problem", ".txt");
+		try {
+			Writer writer = new FileWriter(file);
+			try {
+				writer.write(PROBLEM);
+			} finally {
+				writer.close();
+			}
+			ProblemSpec ps = new ProblemSpec();
+			ps.loadProblem(file.getPath());
+			return ps;
+		} finally {
+			file.delete();
+		}
+	}
+}
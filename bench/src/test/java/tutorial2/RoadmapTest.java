@@ -0,0 +1,96 @@
+package tutorial2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+/**
+ * Checks that Roadmap.read rejects roadmap files whose edges are corrupt.
+ * 
+ * @author lackofcheese
+ */
+public class RoadmapTest {
+	/** The tag the roadmaps are written with */
+	private static final long TAG = 42;
+	/** The size of the header of a roadmap file, in bytes */
+	private static final int HEADER_SIZE = 32;
+
+	@Test
+	public void readsWhatWasWritten() throws IOException {
+		File file = writeRoadmap();
+		try {
+			Roadmap roadmap = Roadmap.read(file, TAG);
+			assertEquals(3, roadmap.getNumNodes());
+			assertEquals(4, roadmap.getNumEdges());
+			assertEquals(Roadmap.VALID, roadmap.getEdgeStatus(0));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void rejectsNegativeCounts() throws IOException {
+		checkRejected(HEADER_SIZE - 8, -1);
+		checkRejected(HEADER_SIZE - 4, -1);
+	}
+
+	@Test
+	public void rejectsBadOffsets() throws IOException {
+		int offsets = HEADER_SIZE + 16 * 3;
+		checkRejected(offsets, 1);
+		checkRejected(offsets + 4, 4);
+		checkRejected(offsets + 12, 3);
+	}
+
+	@Test
+	public void rejectsBadNeighbours() throws IOException {
+		int neighbours = HEADER_SIZE + 16 * 3 + 4 * 4;
+		checkRejected(neighbours, 3);
+		checkRejected(neighbours + 4, -1);
+	}
+
+	/**
+	 * Writes a small roadmap to a temporary file.
+	 */
+	private static File writeRoadmap() throws IOException {
+		IntList connections = new IntList();
+		connections.add(0);
+		connections.add(1);
+		connections.add(1);
+		connections.add(2);
+		Roadmap roadmap = Roadmap.build(10, new double[] { 0, 0.1, 0.2 },
+				new double[] { 0, 0, 0 }, connections);
+		File file = File.createTempFile("roadmap", ".bin");
+		roadmap.write(file, TAG);
+		return file;
+	}
+
+	/**
+	 * Checks that a roadmap file is rejected once the int at the given
+	 * position is replaced by the given value.
+	 */
+	private static void checkRejected(int position, int value)
+			throws IOException {
+		File file = writeRoadmap();
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(position);
+				raf.writeInt(value);
+			} finally {
+				raf.close();
+			}
+			Roadmap.read(file, TAG);
+			fail("Corrupt roadmap file was read");
+		} catch (IOException e) {
+			// As expected.
+		} finally {
+			file.delete();
+		}
+	}
+}
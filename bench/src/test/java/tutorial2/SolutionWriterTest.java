@@ -0,0 +1,73 @@
+package tutorial2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that SolutionWriter writes text angles exactly as String.format
+ * would, including the values whose thousandths of a degree fall on a half.
+ * 
+ * @author lackofcheese
+ */
+public class SolutionWriterTest {
+	/** Values that a plain Math.round of the thousandths gets wrong */
+	private static final double[] TIES = { 32.7195, 64.7575, -128.9405,
+			1.0005, -0.0005, 0.0005, 179.9995, -179.9995, 2.5e-4 };
+
+	@Test
+	public void matchesFormatOnTies() throws IOException {
+		for (double degrees : TIES) {
+			checkDegrees(degrees);
+			checkDegrees(Math.nextUp(degrees));
+			checkDegrees(Math.nextAfter(degrees, Double.NEGATIVE_INFINITY));
+		}
+	}
+
+	@Test
+	public void matchesFormatOnRoundedValues() throws IOException {
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			// Four decimal places give a tie one time in ten.
+			checkDegrees(Math.round((random.nextDouble() * 2 - 1) * 1800000)
+					/ 1e4);
+		}
+	}
+
+	@Test
+	public void matchesFormatOnRandomAngles() throws IOException {
+		Random random = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			double scale = i % 7 == 0 ? 1e-5 : 1;
+			checkAngle((random.nextDouble() * 2 - 1) * Math.PI * scale);
+		}
+	}
+
+	/**
+	 * Checks the writer against String.format for the angle closest to the
+	 * given number of degrees.
+	 */
+	private static void checkDegrees(double degrees) throws IOException {
+		checkAngle(Math.toRadians(degrees));
+	}
+
+	/**
+	 * Checks the writer against String.format for the given angle, in
+	 * radians.
+	 */
+	private static void checkAngle(double angle) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SolutionWriter writer = new SolutionWriter(out, false, false);
+		writer.writeState(angle, -angle);
+		writer.close();
+		double degrees = Math.toDegrees(angle);
+		double negated = Math.toDegrees(-angle);
+		assertEquals(String.format(Locale.ROOT, "%.3f %.3f", degrees, negated)
+				+ System.getProperty("line.separator"), out.toString("US-ASCII"));
+	}
+}
@@ -0,0 +1,234 @@
+package tutorial2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bidirectional A* search for a RoadmapQuery. Since the edges of a roadmap
+ * go both ways, the search grows one frontier forwards from the start and
+ * another backwards from the goal, always expanding whichever frontier is
+ * smaller. This keeps the two searches balanced; in particular, if the start
+ * and goal aren't connected, the search ends once the smaller of their two
+ * components has been exhausted.
+ * 
+ * Both searches are guided by the total angle delta to the goal and to the
+ * start, averaged so that they agree: the forward search uses half of the
+ * distance to the goal minus the distance to the start as its heuristic, and
+ * the backward search uses the negation of that. Since the two heuristics
+ * sum to zero, any path that hasn't been found yet costs at least the sum of
+ * the keys at the top of the two frontiers, so the search stops as soon as
+ * that sum reaches the cost of the best path found where the searches have
+ * met. As with RoadmapSearch, roadmap edges marked INVALID are ignored, and
+ * UNCHECKED edges are assumed to be valid, and a single search may be reused
+ * for any number of queries, with setQuery.
+ * 
+ * @author lackofcheese
+ */
+public class BidirectionalRoadmapSearch {
+	/** The query to answer */
+	private RoadmapQuery query;
+	/** The roadmap being searched */
+	private Roadmap roadmap;
+	/** The number of nodes expanded by the last search */
+	private int numExpanded;
+	/** The list to record the nodes expanded into, in order, or null */
+	private IntList expansionOrder;
+
+	/** The cost of each node from the start (FORWARD) or goal (BACKWARD) */
+	private NodeCosts[] costs = new NodeCosts[2];
+	/** The nodes which have been expanded in each direction */
+	private BitSet[] closed = new BitSet[2];
+	/** The frontier in each direction, keyed by cost plus heuristic */
+	private IndexedHeap[] frontiers = new IndexedHeap[2];
+	/** The cost of the best path found so far */
+	private double bestCost;
+	/** The node at which the best path found so far meets, or -1 */
+	private int meetingNode;
+
+	/** The index of the forward search */
+	private static final int FORWARD = 0;
+	/** The index of the backward search */
+	private static final int BACKWARD = 1;
+
+	/**
+	 * Constructs a search for the given query.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 */
+	public BidirectionalRoadmapSearch(RoadmapQuery query) {
+		int numNodes = query.getNumNodes();
+		for (int direction = FORWARD; direction <= BACKWARD; direction++) {
+			costs[direction] = new NodeCosts(numNodes);
+			closed[direction] = new BitSet(numNodes);
+			frontiers[direction] = new IndexedHeap(numNodes);
+		}
+		setQuery(query);
+	}
+
+	/**
+	 * Sets the query to answer, reusing the space allocated for the last one.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 */
+	public void setQuery(RoadmapQuery query) {
+		this.query = query;
+		this.roadmap = query.getRoadmap();
+		for (int direction = FORWARD; direction <= BACKWARD; direction++) {
+			costs[direction].ensureCapacity(query.getNumNodes());
+			frontiers[direction].ensureCapacity(query.getNumNodes());
+		}
+	}
+
+	/**
+	 * Sets a list to record the nodes expanded by each later search into, in
+	 * the order they are expanded; the list is cleared at the start of each
+	 * search.
+	 * 
+	 * @param expansionOrder
+	 *            the list to record into, or null to stop recording.
+	 */
+	public void setExpansionOrder(IntList expansionOrder) {
+		this.expansionOrder = expansionOrder;
+	}
+
+	/**
+	 * Finds the shortest path from the start of the query to its goal.
+	 * 
+	 * @return the IDs of the nodes along the path, or null if the goal can't
+	 *         be reached.
+	 */
+	public int[] findPath() {
+		for (int direction = FORWARD; direction <= BACKWARD; direction++) {
+			costs[direction].reset();
+			closed[direction].clear();
+			frontiers[direction].clear();
+		}
+		bestCost = Double.POSITIVE_INFINITY;
+		meetingNode = -1;
+
+		numExpanded = 0;
+		if (expansionOrder != null) {
+			expansionOrder.clear();
+		}
+		int start = query.getStartNode();
+		int goal = query.getGoalNode();
+		costs[FORWARD].set(start, 0, -1);
+		frontiers[FORWARD].push(start, estimate(FORWARD, start));
+		costs[BACKWARD].set(goal, 0, -1);
+		frontiers[BACKWARD].push(goal, estimate(BACKWARD, goal));
+		IndexedHeap forward = frontiers[FORWARD];
+		IndexedHeap backward = frontiers[BACKWARD];
+		while (!forward.isEmpty() && !backward.isEmpty()
+				&& forward.peekKey() + backward.peekKey() < bestCost) {
+			int direction = forward.size() <= backward.size() ? FORWARD
+					: BACKWARD;
+			expand(direction, frontiers[direction].poll());
+		}
+		if (meetingNode == -1) {
+			return null;
+		}
+		return buildPath();
+	}
+
+	/**
+	 * Expands the given node in the given direction. Since the edges go both
+	 * ways, the successors of a node are the same in either direction.
+	 */
+	private void expand(int direction, int node) {
+		closed[direction].set(node);
+		numExpanded++;
+		if (expansionOrder != null) {
+			expansionOrder.add(node);
+		}
+		int start = query.getStartNode();
+		int goal = query.getGoalNode();
+		if (node == start || node == goal) {
+			for (int k = 0; k < query.getNumLinks(node); k++) {
+				relax(direction, node, query.getLink(node, k),
+						query.getLinkCost(node, k));
+			}
+			if (query.getDirectCost() >= 0) {
+				relax(direction, node, node == start ? goal : start,
+						query.getDirectCost());
+			}
+			return;
+		}
+		for (int e = roadmap.getFirstEdge(node); e < roadmap.getEndEdge(node); e++) {
+			if (roadmap.getEdgeStatus(e) != Roadmap.INVALID) {
+				relax(direction, node, roadmap.getNeighbour(e),
+						roadmap.getCost(e));
+			}
+		}
+		for (int end = start; end <= goal; end++) {
+			float cost = query.findLinkCost(end, node);
+			if (cost >= 0) {
+				relax(direction, node, end, cost);
+			}
+		}
+	}
+
+	/**
+	 * Updates the cost of reaching the given node in the given direction, if
+	 * going via the given parent is cheaper, and records a new best path if
+	 * the node has also been reached from the other direction.
+	 */
+	private void relax(int direction, int parent, int node, double cost) {
+		if (closed[direction].get(node)) {
+			return;
+		}
+		NodeCosts nodeCosts = costs[direction];
+		double newG = nodeCosts.getCost(parent) + cost;
+		if (newG >= nodeCosts.getCost(node)) {
+			return;
+		}
+		nodeCosts.set(node, newG, parent);
+		frontiers[direction].push(node, newG + estimate(direction, node));
+		double total = newG + costs[1 - direction].getCost(node);
+		if (total < bestCost) {
+			bestCost = total;
+			meetingNode = node;
+		}
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last search, in both
+	 * directions.
+	 * 
+	 * @return the number of nodes expanded by the last search.
+	 */
+	public int getNumExpanded() {
+		return numExpanded;
+	}
+
+	/**
+	 * Returns the heuristic for the given node in the given direction.
+	 */
+	private double estimate(int direction, int node) {
+		double potential = (query.getDistance(node, query.getGoalNode()) - query
+				.getDistance(node, query.getStartNode())) / 2;
+		return direction == FORWARD ? potential : -potential;
+	}
+
+	/**
+	 * Joins the forward path to the meeting node with the backward path from
+	 * it.
+	 */
+	private int[] buildPath() {
+		int[] forward = costs[FORWARD].buildPath(meetingNode);
+		int numBackward = 0;
+		NodeCosts backward = costs[BACKWARD];
+		for (int node = backward.getParent(meetingNode); node != -1; node = backward
+				.getParent(node)) {
+			numBackward++;
+		}
+		int[] path = Arrays.copyOf(forward, forward.length + numBackward);
+		int i = forward.length;
+		for (int node = backward.getParent(meetingNode); node != -1; node = backward
+				.getParent(node)) {
+			path[i++] = node;
+		}
+		return path;
+	}
+}
@@ -0,0 +1,304 @@
+package tutorial2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A precomputed occupancy bitmap of the configuration space.
+ * 
+ * Both joint angles range over [-pi, pi], which is split into square cells.
+ * A cell is only marked as free if the whole of it is valid: that is, if the
+ * clearance of the arm at the centre of the cell is more than any point of
+ * the arm can move while the angles stay within the cell. Every other cell is
+ * marked as blocked, even if parts of it are valid. The first angle wraps
+ * around at +/-pi, as in StateTools.interpolate.
+ * 
+ * Checking a state in a free cell is a single lookup, and checking a direct
+ * path that only passes through free cells is a walk over those cells, so no
+ * geometry is done. Anything that touches a blocked cell is passed on to the
+ * exact checker, as are configurations whose second angle lies outside
+ * [-pi, pi], which the bitmap doesn't cover. The bitmap therefore gives the
+ * same answers as the exact checker, only faster away from the obstacles.
+ * 
+ * @author lackofcheese
+ */
+public class CSpaceBitmap implements StateChecker {
+	/** The checker used to rasterise the bitmap, and for blocked cells */
+	private final CollisionChecker exact;
+	/** The number of cells along each axis */
+	private final int numCells;
+	/** The width of each cell, in radians */
+	private final double cellSize;
+	/** The number of 64-bit words in each row of the bitmap */
+	private final int wordsPerRow;
+	/** The bitmap, row by row (one row per first angle); set bits are free */
+	private final long[] free;
+
+	/**
+	 * Rasterises the configuration space at the given resolution.
+	 * 
+	 * @param exact
+	 *            the checker to rasterise with, and to fall back on.
+	 * @param resolution
+	 *            the width of each cell, in degrees; this is rounded down so
+	 *            that the cells divide the circle evenly.
+	 * @param executor
+	 *            the executor to rasterise the rows on, or null to rasterise
+	 *            them on this thread.
+	 */
+	public CSpaceBitmap(CollisionChecker exact, double resolution,
+			ExecutorService executor) {
+		if (!(resolution > 0)) {
+			throw new IllegalArgumentException("Invalid resolution: "
+					+ resolution);
+		}
+		this.exact = exact;
+		numCells = (int) Math.ceil(360 / resolution);
+		cellSize = 2 * Math.PI / numCells;
+		wordsPerRow = (numCells + 63) / 64;
+		free = new long[numCells * wordsPerRow];
+		rasterise(executor);
+	}
+
+	/**
+	 * Fills in the bitmap. Each task fills whole rows, so no word of the
+	 * bitmap is written by more than one task.
+	 * 
+	 * @param executor
+	 *            the executor to run the tasks on, or null.
+	 */
+	private void rasterise(ExecutorService executor) {
+		if (executor == null) {
+			rasteriseRows(0, numCells);
+			return;
+		}
+		int rowsPerTask = Math.max(1, 4096 / numCells);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < numCells; start += rowsPerTask) {
+			final int first = start;
+			final int end = Math.min(numCells, start + rowsPerTask);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					rasteriseRows(first, end);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while rasterising",
+					e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Rasteriser failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Fills in the given rows of the bitmap.
+	 * 
+	 * @param first
+	 *            the first row to fill in.
+	 * @param end
+	 *            one past the last row to fill in.
+	 */
+	private void rasteriseRows(int first, int end) {
+		// How far any point of the arm can move from where it is at the
+		// centre of a cell while both angles stay within the cell.
+		double halfCell = cellSize / 2;
+		double reach = (exact.getLength1() + exact.getLength2()) * halfCell
+				+ exact.getLength2() * halfCell;
+		for (int i = first; i < end; i++) {
+			double angle1 = -Math.PI + (i + 0.5) * cellSize;
+			int row = i * wordsPerRow;
+			for (int j = 0; j < numCells; j++) {
+				double angle2 = -Math.PI + (j + 0.5) * cellSize;
+				if (exact.getClearance(angle1, angle2) > reach) {
+					free[row + (j >>> 6)] |= 1L << j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of cells along each axis.
+	 * 
+	 * @return the number of cells along each axis.
+	 */
+	public int getNumCells() {
+		return numCells;
+	}
+
+	/**
+	 * Returns whether the given cell is free.
+	 * 
+	 * @param i
+	 *            the index of the cell along the first angle; this wraps
+	 *            around.
+	 * @param j
+	 *            the index of the cell along the second angle; this must be
+	 *            in range.
+	 * @return true if the whole cell is valid, and false if it may not be.
+	 */
+	public boolean isFree(int i, int j) {
+		i %= numCells;
+		if (i < 0) {
+			i += numCells;
+		}
+		return (free[i * wordsPerRow + (j >>> 6)] & (1L << j)) != 0;
+	}
+
+	/**
+	 * Returns whether the given second angle is covered by the bitmap.
+	 * 
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @return true if the angle is covered, and false otherwise.
+	 */
+	private static boolean isCovered(double angle2) {
+		return angle2 >= -Math.PI && angle2 <= Math.PI;
+	}
+
+	/**
+	 * Returns the cell coordinate of the given angle.
+	 * 
+	 * @param angle
+	 *            the angle.
+	 * @return the continuous cell coordinate of the angle.
+	 */
+	private double toCell(double angle) {
+		return (angle + Math.PI) / cellSize;
+	}
+
+	/**
+	 * Returns the index of the cell along the second angle holding the given
+	 * cell coordinate; +pi itself belongs to the last cell.
+	 * 
+	 * @param v
+	 *            the cell coordinate.
+	 * @return the index of the cell.
+	 */
+	private int toRow(double v) {
+		return Math.min(numCells - 1, (int) Math.floor(v));
+	}
+
+	@Override
+	public boolean isValidState(RobotArmState s) {
+		return isValidState(s.getAngle1(), s.getAngle2());
+	}
+
+	@Override
+	public boolean isValidState(double angle1, double angle2) {
+		if (isCovered(angle2)
+				&& isFree((int) Math.floor(toCell(angle1)),
+						toRow(toCell(angle2)))) {
+			return true;
+		}
+		return exact.isValidState(angle1, angle2);
+	}
+
+	@Override
+	public boolean hasDirectPath(RobotArmState s0, RobotArmState s1) {
+		return hasDirectPath(s0.getAngle1(), s0.getAngle2(), s1.getAngle1(),
+				s1.getAngle2());
+	}
+
+	/**
+	 * Returns whether there is a valid direct path between the two given
+	 * configurations; the configurations themselves are assumed to be valid.
+	 * 
+	 * This visits every cell that the path passes through, in order, so the
+	 * cost is proportional to the length of the path in cells. If they are
+	 * all free, so is the path; as soon as a blocked cell is found, the path
+	 * is checked by the exact checker instead.
+	 * 
+	 * @param angle1_0
+	 *            the first angle of the first configuration.
+	 * @param angle2_0
+	 *            the second angle of the first configuration.
+	 * @param angle1_1
+	 *            the first angle of the second configuration.
+	 * @param angle2_1
+	 *            the second angle of the second configuration.
+	 * @return true if the direct path is valid, and false otherwise.
+	 */
+	@Override
+	public boolean hasDirectPath(double angle1_0, double angle2_0,
+			double angle1_1, double angle2_1) {
+		if (!isCovered(angle2_0) || !isCovered(angle2_1)) {
+			return exact.hasDirectPath(angle1_0, angle2_0, angle1_1,
+					angle2_1);
+		}
+		// Same wraparound as StateTools.interpolate.
+		if (Math.abs(angle1_1 - angle1_0) > Math.PI) {
+			if (angle1_0 > angle1_1) {
+				angle1_0 -= 2 * Math.PI;
+			} else {
+				angle1_0 += 2 * Math.PI;
+			}
+		}
+		double u0 = toCell(angle1_0), v0 = toCell(angle2_0);
+		double u1 = toCell(angle1_1), v1 = toCell(angle2_1);
+		int i = (int) Math.floor(u0), j = toRow(v0);
+		int iEnd = (int) Math.floor(u1), jEnd = toRow(v1);
+		double du = u1 - u0, dv = v1 - v0;
+		int stepI = du > 0 ? 1 : -1;
+		int stepJ = dv > 0 ? 1 : -1;
+		// The value of t at which the path next crosses into a new column
+		// or row, and the increase in t between crossings.
+		double deltaU = du != 0 ? 1 / Math.abs(du) : Double.POSITIVE_INFINITY;
+		double deltaV = dv != 0 ? 1 / Math.abs(dv) : Double.POSITIVE_INFINITY;
+		double nextU = du != 0 ? (stepI > 0 ? i + 1 - u0 : u0 - i) * deltaU
+				: Double.POSITIVE_INFINITY;
+		double nextV = dv != 0 ? (stepJ > 0 ? j + 1 - v0 : v0 - j) * deltaV
+				: Double.POSITIVE_INFINITY;
+		// The walk takes exactly this many steps; the checks against the end
+		// cell stop rounding error from stepping past it.
+		int numSteps = Math.abs(iEnd - i) + Math.abs(jEnd - j);
+		if (!isFree(i, j)) {
+			return exact.hasDirectPath(angle1_0, angle2_0, angle1_1, angle2_1);
+		}
+		for (int step = 1; step <= numSteps; step++) {
+			if (j == jEnd || (i != iEnd && nextU < nextV)) {
+				i += stepI;
+				nextU += deltaU;
+			} else {
+				j += stepJ;
+				nextV += deltaV;
+			}
+			if (!isFree(i, j)) {
+				return exact.hasDirectPath(angle1_0, angle2_0, angle1_1,
+						angle2_1);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the width of each cell, in degrees.
+	 * 
+	 * @return the width of each cell, in degrees.
+	 */
+	@Override
+	public double getResolution() {
+		return 360.0 / numCells;
+	}
+
+	/**
+	 * Returns the settings of the exact checker, along with the number of
+	 * cells; both decide which states and paths are accepted.
+	 */
+	@Override
+	public String getSettings() {
+		return "CSpaceBitmap(cells=" + numCells + ", " + exact.getSettings()
+				+ ")";
+	}
+}
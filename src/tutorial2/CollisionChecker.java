@@ -0,0 +1,544 @@
+package tutorial2;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * Checks robot arm configurations against a fixed set of obstacles.
+ * 
+ * This performs the same tests as StateTools.isValidState and
+ * StateTools.hasDirectPath, but the obstacle bounds are copied into flat
+ * arrays up front and the arm is tested directly from its joint angles, so
+ * that no objects are allocated per check. A single checker may be shared
+ * between threads.
+ * 
+ * When there are many obstacles, they are also indexed in a uniform grid over
+ * the unit square, so that each rod is only tested exactly against the
+ * obstacles in the cells overlapped by its bounding box.
+ * 
+ * @author lackofcheese
+ */
+public class CollisionChecker implements StateChecker {
+	/** The length of the first rod */
+	private final double length1;
+	/** The length of the second rod */
+	private final double length2;
+
+	/** The number of (non-empty) obstacles */
+	private final int numObstacles;
+	/** The minimum x-value of each obstacle */
+	private final double[] minX;
+	/** The minimum y-value of each obstacle */
+	private final double[] minY;
+	/** The maximum x-value of each obstacle */
+	private final double[] maxX;
+	/** The maximum y-value of each obstacle */
+	private final double[] maxY;
+
+	/** The fewest obstacles for which the grid is built */
+	private static final int MIN_GRID_OBSTACLES = 16;
+	/** The largest number of grid cells along each side of the square */
+	private static final int MAX_GRID_SIZE = 64;
+	/** The number of grid cells along each side, or 0 if there's no grid */
+	private final int gridSize;
+	/** The start of each cell's entries in cellObstacles, with an end marker */
+	private int[] cellOffsets;
+	/** The obstacles overlapping each cell, cell by cell */
+	private int[] cellObstacles;
+
+	/** The default resolution for checking paths, in degrees */
+	public static final double DEFAULT_RESOLUTION = 0.1;
+	/** The resolution for checking paths, in degrees */
+	private double resolution = DEFAULT_RESOLUTION;
+	/** Whether the clearance of the arm is used to skip along paths */
+	private boolean useClearance = false;
+	/** Per-thread scratch space for the interval queue in hasDirectPath */
+	private final ThreadLocal<double[]> queues = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[64];
+		}
+	};
+
+	/**
+	 * Constructs a checker for the given problem.
+	 * 
+	 * @param ps
+	 *            the problem to check states for.
+	 */
+	public CollisionChecker(ProblemSpec ps) {
+		this(ps.getLength1(), ps.getLength2(), ps.getObstacles());
+	}
+
+	/**
+	 * Constructs a checker for an arm with the given rod lengths, amongst the
+	 * given obstacles.
+	 * 
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 * @param obstacles
+	 *            the obstacles to test against.
+	 */
+	public CollisionChecker(double length1, double length2,
+			List<Obstacle> obstacles) {
+		this.length1 = length1;
+		this.length2 = length2;
+		minX = new double[obstacles.size()];
+		minY = new double[obstacles.size()];
+		maxX = new double[obstacles.size()];
+		maxY = new double[obstacles.size()];
+		int n = 0;
+		for (Obstacle o : obstacles) {
+			Rectangle2D rect = o.getRect();
+			// An empty rectangle never intersects a line, so it can be dropped.
+			if (rect.isEmpty()) {
+				continue;
+			}
+			minX[n] = rect.getMinX();
+			minY[n] = rect.getMinY();
+			maxX[n] = rect.getMaxX();
+			maxY[n] = rect.getMaxY();
+			n++;
+		}
+		numObstacles = n;
+		if (numObstacles < MIN_GRID_OBSTACLES) {
+			gridSize = 0;
+		} else {
+			// About one obstacle per cell, if they were spread evenly.
+			gridSize = Math.min(MAX_GRID_SIZE,
+					(int) Math.ceil(Math.sqrt(numObstacles)));
+			buildGrid();
+		}
+	}
+
+	/**
+	 * Files each obstacle under every grid cell its bounds overlap.
+	 */
+	private void buildGrid() {
+		cellOffsets = new int[gridSize * gridSize + 1];
+		for (int i = 0; i < numObstacles; i++) {
+			for (int r = toCell(minY[i]); r <= toCell(maxY[i]); r++) {
+				for (int c = toCell(minX[i]); c <= toCell(maxX[i]); c++) {
+					cellOffsets[r * gridSize + c + 1]++;
+				}
+			}
+		}
+		for (int k = 0; k < gridSize * gridSize; k++) {
+			cellOffsets[k + 1] += cellOffsets[k];
+		}
+		cellObstacles = new int[cellOffsets[gridSize * gridSize]];
+		int[] next = new int[gridSize * gridSize];
+		System.arraycopy(cellOffsets, 0, next, 0, next.length);
+		for (int i = 0; i < numObstacles; i++) {
+			for (int r = toCell(minY[i]); r <= toCell(maxY[i]); r++) {
+				for (int c = toCell(minX[i]); c <= toCell(maxX[i]); c++) {
+					cellObstacles[next[r * gridSize + c]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the grid row or column holding the given coordinate; anything
+	 * outside the unit square is clamped to the nearest cell.
+	 */
+	private int toCell(double v) {
+		if (!(v > 0)) {
+			return 0;
+		}
+		return Math.min(gridSize - 1, (int) (v * gridSize));
+	}
+
+	/**
+	 * Returns the length of the first rod.
+	 * 
+	 * @return the length of the first rod.
+	 */
+	public double getLength1() {
+		return length1;
+	}
+
+	/**
+	 * Returns the length of the second rod.
+	 * 
+	 * @return the length of the second rod.
+	 */
+	public double getLength2() {
+		return length2;
+	}
+
+	/**
+	 * Returns whether the given state is valid.
+	 * 
+	 * @param s
+	 *            the state to test.
+	 * @return true if s is a valid state, and false otherwise.
+	 */
+	@Override
+	public boolean isValidState(RobotArmState s) {
+		return isValidState(s.getAngle1(), s.getAngle2());
+	}
+
+	/**
+	 * Returns whether the arm is valid with the given joint angles; that is,
+	 * whether it lies within the unit square and doesn't touch any obstacle.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @return true if the configuration is valid, and false otherwise.
+	 */
+	@Override
+	public boolean isValidState(double angle1, double angle2) {
+		double x0 = 0.5, y0 = 0.5;
+		double x1 = x0 + length1 * Math.cos(angle1);
+		double y1 = y0 + length1 * Math.sin(angle1);
+		double x2 = x1 + length2 * Math.cos(angle1 + angle2);
+		double y2 = y1 + length2 * Math.sin(angle1 + angle2);
+		if (x1 < 0 || x1 > 1 || y1 < 0 || y1 > 1 || x2 < 0 || x2 > 1
+				|| y2 < 0 || y2 > 1) {
+			return false;
+		}
+		if (gridSize == 0) {
+			for (int i = 0; i < numObstacles; i++) {
+				if (segmentIntersectsBox(x0, y0, x1, y1, minX[i], minY[i],
+						maxX[i], maxY[i])
+						|| segmentIntersectsBox(x1, y1, x2, y2, minX[i],
+								minY[i], maxX[i], maxY[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return !segmentHitsGrid(x0, y0, x1, y1)
+				&& !segmentHitsGrid(x1, y1, x2, y2);
+	}
+
+	/**
+	 * Returns whether the line segment from (x1, y1) to (x2, y2), which lies
+	 * in the unit square, intersects any obstacle in the grid.
+	 * 
+	 * Only the cells overlapped by the bounding box of the segment are
+	 * visited. An obstacle that spans several of those cells is only tested
+	 * in the first of them, in row and column order; that is, the cell
+	 * holding the lower corner of the overlap between the obstacle's cells
+	 * and the box's.
+	 */
+	private boolean segmentHitsGrid(double x1, double y1, double x2,
+			double y2) {
+		int c0 = toCell(Math.min(x1, x2));
+		int c1 = toCell(Math.max(x1, x2));
+		int r0 = toCell(Math.min(y1, y2));
+		int r1 = toCell(Math.max(y1, y2));
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * gridSize + c;
+				for (int k = cellOffsets[cell]; k < cellOffsets[cell + 1]; k++) {
+					int i = cellObstacles[k];
+					if ((c > c0 && toCell(minX[i]) < c)
+							|| (r > r0 && toCell(minY[i]) < r)) {
+						continue;
+					}
+					if (segmentIntersectsBox(x1, y1, x2, y2, minX[i],
+							minY[i], maxX[i], maxY[i])) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether there is a valid direct path between the given two robot
+	 * arm states.
+	 * 
+	 * @param s0
+	 *            the first state.
+	 * @param s1
+	 *            the second state.
+	 * @return true if the direct path is valid, and false otherwise.
+	 */
+	@Override
+	public boolean hasDirectPath(RobotArmState s0, RobotArmState s1) {
+		return hasDirectPath(s0.getAngle1(), s0.getAngle2(), s1.getAngle1(),
+				s1.getAngle2());
+	}
+
+	/**
+	 * Returns whether there is a valid direct path between the two given
+	 * configurations; the configurations themselves are assumed to be valid.
+	 * 
+	 * The path is checked coarse-to-fine: first the midpoint, then the
+	 * midpoints of each half, and so on, until no two checked points are
+	 * further apart than the resolution. Since most blocked paths are blocked
+	 * somewhere in the middle, this rejects them much sooner than walking
+	 * from one end. If clearance checking is enabled, the distance from the
+	 * arm to the nearest obstacle is used to skip over any part of the path
+	 * that the arm can't possibly collide on.
+	 * 
+	 * @param angle1_0
+	 *            the first angle of the first configuration.
+	 * @param angle2_0
+	 *            the second angle of the first configuration.
+	 * @param angle1_1
+	 *            the first angle of the second configuration.
+	 * @param angle2_1
+	 *            the second angle of the second configuration.
+	 * @return true if the direct path is valid, and false otherwise.
+	 */
+	@Override
+	public boolean hasDirectPath(double angle1_0, double angle2_0,
+			double angle1_1, double angle2_1) {
+		// Same wraparound as StateTools.interpolate.
+		if (Math.abs(angle1_1 - angle1_0) > Math.PI) {
+			if (angle1_0 > angle1_1) {
+				angle1_0 -= 2 * Math.PI;
+			} else {
+				angle1_0 += 2 * Math.PI;
+			}
+		}
+		double delta1 = angle1_1 - angle1_0;
+		double delta2 = angle2_1 - angle2_0;
+		double maxDelta = Math.toDegrees(Math.max(Math.abs(delta1),
+				Math.abs(delta2)));
+		// The shortest interval of t that still needs to be split.
+		double minLength = resolution / maxDelta;
+		if (!(minLength < 1)) {
+			return true;
+		}
+		// An upper bound on how fast any point of the arm moves with t.
+		double speed = (length1 + length2) * Math.abs(delta1) + length2
+				* Math.abs(delta2);
+
+		// A FIFO queue of intervals whose endpoints are known to be valid;
+		// they're disjoint and longer than minLength, which bounds their
+		// number.
+		int capacity = (int) (1 / minLength) + 2;
+		double[] queue = getQueue(capacity * 2);
+		int head = 0, count = 1;
+		queue[0] = 0;
+		queue[1] = 1;
+		while (count > 0) {
+			double a = queue[head * 2];
+			double b = queue[head * 2 + 1];
+			head = (head + 1) % capacity;
+			count--;
+
+			double t = (a + b) / 2;
+			double angle1 = angle1_0 + delta1 * t;
+			double angle2 = angle2_0 + delta2 * t;
+			double skip = 0;
+			if (useClearance) {
+				double clearance = getClearance(angle1, angle2);
+				if (clearance <= 0) {
+					return false;
+				}
+				skip = clearance / speed;
+			} else if (!isValidState(angle1, angle2)) {
+				return false;
+			}
+			if (t - skip - a > minLength) {
+				int tail = (head + count) % capacity;
+				queue[tail * 2] = a;
+				queue[tail * 2 + 1] = t - skip;
+				count++;
+			}
+			if (b - t - skip > minLength) {
+				int tail = (head + count) % capacity;
+				queue[tail * 2] = t + skip;
+				queue[tail * 2 + 1] = b;
+				count++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the distance between the arm and the nearest obstacle or edge
+	 * of the unit square, with the given joint angles.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @return the clearance of the arm, or 0 if the configuration is invalid.
+	 */
+	public double getClearance(double angle1, double angle2) {
+		double x0 = 0.5, y0 = 0.5;
+		double x1 = x0 + length1 * Math.cos(angle1);
+		double y1 = y0 + length1 * Math.sin(angle1);
+		double x2 = x1 + length2 * Math.cos(angle1 + angle2);
+		double y2 = y1 + length2 * Math.sin(angle1 + angle2);
+		// The square is convex, so the points nearest its edges are joints.
+		double clearance = Math.min(Math.min(x1, 1 - x1),
+				Math.min(y1, 1 - y1));
+		clearance = Math.min(clearance,
+				Math.min(Math.min(x2, 1 - x2), Math.min(y2, 1 - y2)));
+		clearance = Math.min(clearance, 0.5);
+		if (clearance < 0) {
+			return 0;
+		}
+		for (int i = 0; i < numObstacles && clearance > 0; i++) {
+			clearance = Math.min(clearance, segmentBoxDistance(x0, y0, x1, y1,
+					minX[i], minY[i], maxX[i], maxY[i]));
+			clearance = Math.min(clearance, segmentBoxDistance(x1, y1, x2, y2,
+					minX[i], minY[i], maxX[i], maxY[i]));
+		}
+		return clearance;
+	}
+
+	/**
+	 * Sets the resolution used when checking direct paths; no two points
+	 * checked along a path differ by more than this in either angle.
+	 * 
+	 * @param resolution
+	 *            the resolution, in degrees.
+	 */
+	public void setResolution(double resolution) {
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Returns the resolution used when checking direct paths.
+	 * 
+	 * @return the resolution, in degrees.
+	 */
+	@Override
+	public double getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Sets whether the clearance of the arm is used to skip over safe parts
+	 * of a path when checking it.
+	 * 
+	 * @param useClearance
+	 *            true to enable clearance checking.
+	 */
+	public void setUseClearance(boolean useClearance) {
+		this.useClearance = useClearance;
+	}
+
+	/**
+	 * Returns whether the clearance of the arm is used to skip along paths.
+	 * 
+	 * @return whether clearance checking is enabled.
+	 */
+	public boolean isUseClearance() {
+		return useClearance;
+	}
+
+	@Override
+	public String getSettings() {
+		return "CollisionChecker(resolution=" + resolution + ", clearance="
+				+ useClearance + ")";
+	}
+
+	/**
+	 * Returns the calling thread's interval queue, growing it if it is
+	 * smaller than the given size.
+	 */
+	private double[] getQueue(int size) {
+		double[] queue = queues.get();
+		if (queue.length < size) {
+			queue = new double[Math.max(size, queue.length * 2)];
+			queues.set(queue);
+		}
+		return queue;
+	}
+
+	/**
+	 * Returns whether the line segment from (x1, y1) to (x2, y2) intersects
+	 * the closed axis-aligned box with the given bounds; this agrees with
+	 * Line2D.intersects(Rectangle2D) for non-empty rectangles.
+	 * 
+	 * @return true if the segment intersects the box, and false otherwise.
+	 */
+	static boolean segmentIntersectsBox(double x1, double y1, double x2,
+			double y2, double minX, double minY, double maxX, double maxY) {
+		if ((x1 < minX && x2 < minX) || (x1 > maxX && x2 > maxX)
+				|| (y1 < minY && y2 < minY) || (y1 > maxY && y2 > maxY)) {
+			return false;
+		}
+		double t0 = 0, t1 = 1;
+		double dx = x2 - x1;
+		if (dx != 0) {
+			double ta = (minX - x1) / dx;
+			double tb = (maxX - x1) / dx;
+			if (ta > tb) {
+				double tmp = ta;
+				ta = tb;
+				tb = tmp;
+			}
+			t0 = Math.max(t0, ta);
+			t1 = Math.min(t1, tb);
+		}
+		double dy = y2 - y1;
+		if (dy != 0) {
+			double ta = (minY - y1) / dy;
+			double tb = (maxY - y1) / dy;
+			if (ta > tb) {
+				double tmp = ta;
+				ta = tb;
+				tb = tmp;
+			}
+			t0 = Math.max(t0, ta);
+			t1 = Math.min(t1, tb);
+		}
+		return t0 <= t1;
+	}
+
+	/**
+	 * Returns the distance between the line segment from (x1, y1) to (x2, y2)
+	 * and the closed axis-aligned box with the given bounds.
+	 * 
+	 * @return the distance, or 0 if the segment intersects the box.
+	 */
+	static double segmentBoxDistance(double x1, double y1, double x2,
+			double y2, double minX, double minY, double maxX, double maxY) {
+		if (segmentIntersectsBox(x1, y1, x2, y2, minX, minY, maxX, maxY)) {
+			return 0;
+		}
+		// Otherwise the closest pair of points includes a vertex of one.
+		double d = Math.min(pointBoxDistance(x1, y1, minX, minY, maxX, maxY),
+				pointBoxDistance(x2, y2, minX, minY, maxX, maxY));
+		d = Math.min(d, pointSegmentDistance(minX, minY, x1, y1, x2, y2));
+		d = Math.min(d, pointSegmentDistance(minX, maxY, x1, y1, x2, y2));
+		d = Math.min(d, pointSegmentDistance(maxX, minY, x1, y1, x2, y2));
+		d = Math.min(d, pointSegmentDistance(maxX, maxY, x1, y1, x2, y2));
+		return d;
+	}
+
+	/**
+	 * Returns the distance between the point (px, py) and the box with the
+	 * given bounds.
+	 */
+	private static double pointBoxDistance(double px, double py, double minX,
+			double minY, double maxX, double maxY) {
+		double dx = Math.max(0, Math.max(minX - px, px - maxX));
+		double dy = Math.max(0, Math.max(minY - py, py - maxY));
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Returns the distance between the point (px, py) and the line segment
+	 * from (x1, y1) to (x2, y2).
+	 */
+	private static double pointSegmentDistance(double px, double py,
+			double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double lengthSq = dx * dx + dy * dy;
+		double t = 0;
+		if (lengthSq > 0) {
+			t = Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy)
+					/ lengthSq));
+		}
+		double ex = x1 + t * dx - px;
+		double ey = y1 + t * dy - py;
+		return Math.sqrt(ex * ex + ey * ey);
+	}
+}
@@ -0,0 +1,529 @@
+package tutorial2;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keeps a roadmap up to date as the obstacles of a problem are added, moved
+ * and removed, without rebuilding it.
+ * 
+ * Every edge of the roadmap is indexed by bounding boxes of the regions of the
+ * workspace that the two rods sweep through along it, in a uniform grid of
+ * cells over the unit square. When an obstacle changes, only the edges whose
+ * boxes overlap the old or new rectangle can change, so only those are reset:
+ * edges with an endpoint that is no longer valid are marked INVALID, and the
+ * rest are marked UNCHECKED. They can then either be rechecked straight away
+ * with recheck, or left for RobotSolver.lazySearch to check as it needs
+ * them.
+ * 
+ * A roadmap built eagerly only holds the states and edges that were valid
+ * when it was built, so resetting edges can't bring back the parts of
+ * C-space that a removed obstacle used to block. Wherever an obstacle is
+ * removed or moved away, the configurations in which the arm crosses its old
+ * rectangle are therefore sampled again, at the density of the roadmap's own
+ * samples over the whole of C-space; the valid ones are added to the roadmap
+ * with UNCHECKED edges to their neighbours. Samples that fall near a state
+ * the roadmap already has are dropped, so an obstacle moving back and forth
+ * over the same ground doesn't keep adding states there, and the new edges
+ * are appended to the index rather than rebuilding it.
+ * 
+ * @author lackofcheese
+ */
+public class DynamicRoadmap {
+	/** The default number of cells along each side of the index grid. */
+	public static final int DEFAULT_GRID_SIZE = 32;
+
+	/** The roadmap being kept up to date */
+	private Roadmap roadmap;
+	/** The problem whose obstacles are being changed */
+	private ProblemSpec ps;
+	/** The checker for the current obstacles */
+	private CollisionChecker checker;
+	/** The number of configurations drawn to sample a freed region */
+	private int numDraws;
+
+	/** The number of cells along each side of the index grid */
+	private int gridSize;
+	/** The boxes in each cell, as twice the index into edges, plus the rod */
+	private IntList[] cells;
+	/** The number of undirected edges indexed */
+	private int numEdges = 0;
+	/** Each undirected edge, as the ID of its direction from lower node */
+	private int[] edges;
+	/** The lower node of each undirected edge */
+	private int[] sources;
+	/**
+	 * The swept bounding boxes of the first and second rods along each edge,
+	 * as minX, minY, maxX, maxY
+	 */
+	private float[] boxes;
+
+	/** The update in which each edge was last reset */
+	private int[] edgeStamps;
+	/** The update in which each node was last checked */
+	private int[] nodeStamps;
+	/** Whether each node was valid when it was last checked */
+	private boolean[] nodeValid;
+	/** The current update */
+	private int stamp = 0;
+	/** The edges reset to UNCHECKED since the last recheck */
+	private IntList pending = new IntList();
+
+	/**
+	 * Constructs a dynamic roadmap with the default index grid.
+	 * 
+	 * @param roadmap
+	 *            the roadmap to keep up to date; its edges must be valid for
+	 *            the current obstacles, or UNCHECKED.
+	 * @param ps
+	 *            the problem whose obstacles will change.
+	 * @param template
+	 *            a checker whose settings are copied for the new obstacles.
+	 */
+	public DynamicRoadmap(Roadmap roadmap, ProblemSpec ps,
+			CollisionChecker template) {
+		this(roadmap, ps, template, DEFAULT_GRID_SIZE);
+	}
+
+	/**
+	 * Constructs a dynamic roadmap.
+	 * 
+	 * @param roadmap
+	 *            the roadmap to keep up to date; its edges must be valid for
+	 *            the current obstacles, or UNCHECKED.
+	 * @param ps
+	 *            the problem whose obstacles will change.
+	 * @param template
+	 *            a checker whose settings are copied for the new obstacles.
+	 * @param gridSize
+	 *            the number of cells along each side of the index grid.
+	 */
+	public DynamicRoadmap(Roadmap roadmap, ProblemSpec ps,
+			CollisionChecker template, int gridSize) {
+		this.roadmap = roadmap;
+		this.ps = ps;
+		this.checker = template;
+		this.gridSize = gridSize;
+		numDraws = roadmap.getNumNodes();
+		cells = new IntList[gridSize * gridSize];
+		for (int c = 0; c < cells.length; c++) {
+			cells[c] = new IntList();
+		}
+		int capacity = roadmap.getNumEdges() / 2;
+		edges = new int[capacity];
+		sources = new int[capacity];
+		boxes = new float[capacity * 8];
+		edgeStamps = new int[capacity];
+		for (int i = 0; i < roadmap.getNumNodes(); i++) {
+			addEdges(i, roadmap.getFirstEdge(i));
+		}
+		nodeStamps = new int[roadmap.getNumNodes()];
+		nodeValid = new boolean[roadmap.getNumNodes()];
+	}
+
+	/**
+	 * Indexes the edges of the given node from the given edge onwards that
+	 * lead to higher nodes: computes the swept box of each one, and files it
+	 * under every cell its box overlaps.
+	 */
+	private void addEdges(int node, int firstEdge) {
+		double[] box = new double[8];
+		for (int e = firstEdge; e < roadmap.getEndEdge(node); e++) {
+			int j = roadmap.getNeighbour(e);
+			if (j < node) {
+				continue;
+			}
+			if (numEdges == edges.length) {
+				int capacity = Math.max(16, numEdges * 2);
+				edges = Arrays.copyOf(edges, capacity);
+				sources = Arrays.copyOf(sources, capacity);
+				boxes = Arrays.copyOf(boxes, capacity * 8);
+				edgeStamps = Arrays.copyOf(edgeStamps, capacity);
+			}
+			int k = numEdges++;
+			edges[k] = e;
+			sources[k] = node;
+			getSweptBoxes(roadmap.getAngle1(node), roadmap.getAngle2(node),
+					roadmap.getAngle1(j), roadmap.getAngle2(j), box);
+			// Round outwards, so the float boxes still cover the regions.
+			for (int b = 0; b < 8; b += 4) {
+				boxes[k * 8 + b] = Math.nextAfter((float) box[b],
+						Double.NEGATIVE_INFINITY);
+				boxes[k * 8 + b + 1] = Math.nextAfter((float) box[b + 1],
+						Double.NEGATIVE_INFINITY);
+				boxes[k * 8 + b + 2] = Math.nextUp((float) box[b + 2]);
+				boxes[k * 8 + b + 3] = Math.nextUp((float) box[b + 3]);
+			}
+			for (int b = k * 2; b < k * 2 + 2; b++) {
+				for (int y = toCell(boxes[b * 4 + 1]); y <= toCell(boxes[b * 4 + 3]); y++) {
+					for (int x = toCell(boxes[b * 4]); x <= toCell(boxes[b * 4 + 2]); x++) {
+						cells[y * gridSize + x].add(b);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes bounding boxes of the regions swept by the two rods along the
+	 * direct path between two configurations. Every point of the first rod
+	 * moves by at most l1|d1| along the path, and every point of the second
+	 * by at most (l1+l2)|d1| + l2|d2|, so every point along the path is
+	 * within half of that of the same point at the nearer end; the boxes of
+	 * each rod at the two ends are joined and grown by that much.
+	 */
+	private void getSweptBoxes(double angle1_0, double angle2_0,
+			double angle1_1, double angle2_1, double[] box) {
+		double length1 = ps.getLength1();
+		double length2 = ps.getLength2();
+		for (int b = 0; b < 8; b += 4) {
+			box[b] = box[b + 1] = Double.POSITIVE_INFINITY;
+			box[b + 2] = box[b + 3] = Double.NEGATIVE_INFINITY;
+		}
+		addArm(angle1_0, angle2_0, length1, length2, box);
+		addArm(angle1_1, angle2_1, length1, length2, box);
+		// Same wraparound as StateTools.interpolate.
+		double delta1 = Math.abs(angle1_1 - angle1_0);
+		if (delta1 > Math.PI) {
+			delta1 = 2 * Math.PI - delta1;
+		}
+		double delta2 = Math.abs(angle2_1 - angle2_0);
+		double margin1 = length1 * delta1 / 2;
+		double margin2 = ((length1 + length2) * delta1 + length2 * delta2) / 2;
+		box[0] -= margin1;
+		box[1] -= margin1;
+		box[2] += margin1;
+		box[3] += margin1;
+		box[4] -= margin2;
+		box[5] -= margin2;
+		box[6] += margin2;
+		box[7] += margin2;
+	}
+
+	/**
+	 * Grows the given boxes to hold the first and second rods of the arm
+	 * with the given joint angles.
+	 */
+	private static void addArm(double angle1, double angle2, double length1,
+			double length2, double[] box) {
+		double x1 = 0.5 + length1 * Math.cos(angle1);
+		double y1 = 0.5 + length1 * Math.sin(angle1);
+		double x2 = x1 + length2 * Math.cos(angle1 + angle2);
+		double y2 = y1 + length2 * Math.sin(angle1 + angle2);
+		box[0] = Math.min(box[0], Math.min(0.5, x1));
+		box[1] = Math.min(box[1], Math.min(0.5, y1));
+		box[2] = Math.max(box[2], Math.max(0.5, x1));
+		box[3] = Math.max(box[3], Math.max(0.5, y1));
+		box[4] = Math.min(box[4], Math.min(x1, x2));
+		box[5] = Math.min(box[5], Math.min(y1, y2));
+		box[6] = Math.max(box[6], Math.max(x1, x2));
+		box[7] = Math.max(box[7], Math.max(y1, y2));
+	}
+
+	/**
+	 * Returns the index of the grid cell holding the given coordinate, which
+	 * is clamped to the unit square.
+	 */
+	private int toCell(double v) {
+		return Math.max(0, Math.min(gridSize - 1, (int) Math.floor(v
+				* gridSize)));
+	}
+
+	/**
+	 * Returns the roadmap being kept up to date; this is replaced whenever
+	 * states are added to it.
+	 * 
+	 * @return the roadmap.
+	 */
+	public Roadmap getRoadmap() {
+		return roadmap;
+	}
+
+	/**
+	 * Returns the checker for the current obstacles; this is replaced
+	 * whenever the obstacles change.
+	 * 
+	 * @return the checker for the current obstacles.
+	 */
+	public CollisionChecker getChecker() {
+		return checker;
+	}
+
+	/**
+	 * Adds an obstacle to the problem, and resets the edges it may block.
+	 * 
+	 * @param obstacle
+	 *            the obstacle to add.
+	 * @return the number of edges reset.
+	 */
+	public int addObstacle(Obstacle obstacle) {
+		ps.addObstacle(obstacle);
+		updateChecker();
+		return reset(null, obstacle.getRect());
+	}
+
+	/**
+	 * Moves an obstacle, by replacing it with another one, resets the edges
+	 * that either of them may have blocked or may now block, and samples new
+	 * states where the old one was.
+	 * 
+	 * @param index
+	 *            the index of the obstacle, as per ProblemSpec.getObstacles.
+	 * @param obstacle
+	 *            the obstacle to put in its place.
+	 * @return the number of edges reset or added.
+	 */
+	public int moveObstacle(int index, Obstacle obstacle) {
+		Obstacle old = ps.setObstacle(index, obstacle);
+		updateChecker();
+		int numReset = reset(old.getRect(), obstacle.getRect());
+		return numReset + resample(old.getRect());
+	}
+
+	/**
+	 * Removes an obstacle from the problem, resets the edges it may have
+	 * blocked, and samples new states where it was.
+	 * 
+	 * @param index
+	 *            the index of the obstacle, as per ProblemSpec.getObstacles.
+	 * @return the number of edges reset or added.
+	 */
+	public int removeObstacle(int index) {
+		Obstacle old = ps.removeObstacle(index);
+		updateChecker();
+		int numReset = reset(old.getRect(), null);
+		return numReset + resample(old.getRect());
+	}
+
+	/**
+	 * Checks every edge reset to UNCHECKED since the last recheck.
+	 * 
+	 * @return the number of edges found to be INVALID.
+	 */
+	public int recheck() {
+		int numInvalid = 0;
+		for (int p = 0; p < pending.size(); p++) {
+			int k = pending.get(p);
+			int i = sources[k];
+			int e = edges[k];
+			if (roadmap.getEdgeStatus(e) != Roadmap.UNCHECKED) {
+				continue;
+			}
+			int j = roadmap.getNeighbour(e);
+			boolean valid = checker.hasDirectPath(roadmap.getAngle1(i),
+					roadmap.getAngle2(i), roadmap.getAngle1(j),
+					roadmap.getAngle2(j));
+			roadmap.setEdgeStatus(i, e, valid ? Roadmap.VALID
+					: Roadmap.INVALID);
+			if (!valid) {
+				numInvalid++;
+			}
+		}
+		pending.clear();
+		return numInvalid;
+	}
+
+	/**
+	 * Replaces the checker with one for the current obstacles.
+	 */
+	private void updateChecker() {
+		CollisionChecker updated = new CollisionChecker(ps);
+		updated.setResolution(checker.getResolution());
+		updated.setUseClearance(checker.isUseClearance());
+		checker = updated;
+	}
+
+	/**
+	 * Resets the edges whose swept boxes overlap either of the given
+	 * rectangles. Around a removed rectangle, only INVALID edges can change;
+	 * around an added one, only edges that aren't INVALID can.
+	 * 
+	 * @param removed
+	 *            the rectangle of the removed obstacle, or null.
+	 * @param added
+	 *            the rectangle of the added obstacle, or null.
+	 * @return the number of edges reset.
+	 */
+	private int reset(Rectangle2D removed, Rectangle2D added) {
+		stamp++;
+		int numReset = 0;
+		if (removed != null) {
+			numReset += reset(removed, true);
+		}
+		if (added != null) {
+			numReset += reset(added, false);
+		}
+		return numReset;
+	}
+
+	/**
+	 * Resets the edges whose swept boxes overlap the given rectangle, and
+	 * which are INVALID or not according to the given flag.
+	 */
+	private int reset(Rectangle2D rect, boolean invalid) {
+		if (rect.isEmpty()) {
+			// An empty rectangle never blocks anything.
+			return 0;
+		}
+		double minX = rect.getMinX(), minY = rect.getMinY();
+		double maxX = rect.getMaxX(), maxY = rect.getMaxY();
+		int numReset = 0;
+		for (int y = toCell(minY); y <= toCell(maxY); y++) {
+			for (int x = toCell(minX); x <= toCell(maxX); x++) {
+				IntList cell = cells[y * gridSize + x];
+				for (int c = 0; c < cell.size(); c++) {
+					int b = cell.get(c);
+					int k = b / 2;
+					int e = edges[k];
+					if (edgeStamps[k] == stamp
+							|| (roadmap.getEdgeStatus(e) == Roadmap.INVALID) != invalid
+							|| boxes[b * 4] > maxX || boxes[b * 4 + 1] > maxY
+							|| boxes[b * 4 + 2] < minX
+							|| boxes[b * 4 + 3] < minY) {
+						continue;
+					}
+					edgeStamps[k] = stamp;
+					int i = sources[k];
+					int j = roadmap.getNeighbour(e);
+					if (isValidNode(i) && isValidNode(j)) {
+						roadmap.setEdgeStatus(i, e, Roadmap.UNCHECKED);
+						pending.add(k);
+					} else {
+						roadmap.setEdgeStatus(i, e, Roadmap.INVALID);
+					}
+					numReset++;
+				}
+			}
+		}
+		return numReset;
+	}
+
+	/**
+	 * Samples new states in which the arm crosses the given rectangle, and
+	 * adds the valid ones to the roadmap, along with UNCHECKED edges to their
+	 * neighbours that are valid for the current obstacles. A sample is
+	 * dropped if it is within the sample spacing of a state already in the
+	 * roadmap, or of one added before it; the spacing is the total angle
+	 * delta at which numDraws samples would cover the whole of C-space. The
+	 * new edges are appended to the index, and join the edges pending a
+	 * recheck.
+	 * 
+	 * @return the number of edges added.
+	 */
+	private int resample(Rectangle2D rect) {
+		if (rect.isEmpty()) {
+			return 0;
+		}
+		double length1 = ps.getLength1();
+		double length2 = ps.getLength2();
+		double maxAngleDelta = roadmap.getMaxAngleDelta();
+		// Each sample covers a diamond of area 2 * spacing^2 in degrees.
+		double spacing = Math.min(maxAngleDelta,
+				360 / Math.sqrt(2.0 * numDraws));
+		Random random = new Random(StateTools.nextSeed());
+		StateIndex index = new StateIndex(maxAngleDelta);
+		List<RobotArmState> added = new ArrayList<RobotArmState>();
+		IntList found = new IntList();
+		for (int d = 0; d < numDraws; d++) {
+			RobotArmState s = StateTools.createRandomState(random, length1,
+					length2);
+			if (!rect.intersectsLine(RobotArmState.BASE_X,
+					RobotArmState.BASE_Y, s.getJointX(), s.getJointY())
+					&& !rect.intersectsLine(s.getJointX(), s.getJointY(),
+							s.getEndX(), s.getEndY())) {
+				continue;
+			}
+			found.clear();
+			index.findNeighbours(s, spacing, found);
+			if (found.size() > 0 || isCovered(s, spacing, found)
+					|| !checker.isValidState(s)) {
+				continue;
+			}
+			index.add(s);
+			added.add(s);
+		}
+		if (added.isEmpty()) {
+			return 0;
+		}
+
+		int numOld = roadmap.getNumNodes();
+		double[] angles1 = Roadmap.getAngles1(added);
+		double[] angles2 = Roadmap.getAngles2(added);
+		IntList connections = new IntList();
+		for (int i = 0; i < angles1.length; i++) {
+			found.clear();
+			roadmap.findNeighbours(angles1[i], angles2[i], found);
+			for (int k = 0; k < found.size(); k++) {
+				if (isValidNode(found.get(k))) {
+					connections.add(numOld + i);
+					connections.add(found.get(k));
+				}
+			}
+			found.clear();
+			index.findNeighbours(angles1[i], angles2[i], maxAngleDelta, found);
+			for (int k = 0; k < found.size(); k++) {
+				if (found.get(k) > i) {
+					connections.add(numOld + i);
+					connections.add(numOld + found.get(k));
+				}
+			}
+		}
+
+		// Each old node keeps its old edges first, so every indexed edge
+		// moves along by as much as the first edge of its source does.
+		Roadmap old = roadmap;
+		roadmap = old.extend(angles1, angles2, connections,
+				Roadmap.UNCHECKED);
+		for (int k = 0; k < numEdges; k++) {
+			edges[k] += roadmap.getFirstEdge(sources[k])
+					- old.getFirstEdge(sources[k]);
+		}
+		int numOldEdges = numEdges;
+		for (int i = 0; i < numOld; i++) {
+			addEdges(i, roadmap.getFirstEdge(i) + old.getEndEdge(i)
+					- old.getFirstEdge(i));
+		}
+		for (int i = numOld; i < roadmap.getNumNodes(); i++) {
+			addEdges(i, roadmap.getFirstEdge(i));
+		}
+		for (int k = numOldEdges; k < numEdges; k++) {
+			pending.add(k);
+		}
+		nodeStamps = Arrays.copyOf(nodeStamps, roadmap.getNumNodes());
+		nodeValid = Arrays.copyOf(nodeValid, roadmap.getNumNodes());
+		return numEdges - numOldEdges;
+	}
+
+	/**
+	 * Returns whether the roadmap has a state within the given total angle
+	 * delta of the given one.
+	 */
+	private boolean isCovered(RobotArmState s, double spacing, IntList found) {
+		found.clear();
+		roadmap.findNeighbours(s.getAngle1(), s.getAngle2(), found);
+		for (int k = 0; k < found.size(); k++) {
+			int node = found.get(k);
+			if (StateTools.totalAngleDelta(s.getAngle1(), s.getAngle2(),
+					roadmap.getAngle1(node), roadmap.getAngle2(node)) <= spacing) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the given node is valid for the current obstacles,
+	 * checking it at most once per update.
+	 */
+	private boolean isValidNode(int node) {
+		if (nodeStamps[node] != stamp) {
+			nodeStamps[node] = stamp;
+			nodeValid[node] = checker.isValidState(roadmap.getAngle1(node),
+					roadmap.getAngle2(node));
+		}
+		return nodeValid[node];
+	}
+}
@@ -0,0 +1,265 @@
+package tutorial2;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A deterministic planner which runs A* over a regular lattice of joint
+ * angles, rather than over a randomly sampled roadmap.
+ * 
+ * The first angle wraps around, so the lattice has the same number of columns
+ * as there are steps in a circle; the second angle doesn't, so its rows run
+ * from -pi to pi inclusive. Each lattice point is joined to its eight
+ * neighbours, and the start and goal are joined to the corners of the lattice
+ * cell they lie in. The graph is never built: lattice points and moves are
+ * only checked when the search first needs them. A move is only checked if
+ * it would improve the cost of the node it leads to, and the validity of each
+ * lattice point is kept between searches. As per TotalAngleDeltaHeuristic,
+ * the total angle delta to the goal is used as the heuristic.
+ * 
+ * @author lackofcheese
+ */
+public class GridPlanner {
+	/** The default step between lattice points, in degrees. */
+	public static final double DEFAULT_STEP = 1;
+
+	/** A lattice point which hasn't been checked yet */
+	private static final byte UNCHECKED = 0;
+	/** A lattice point at which the arm is valid */
+	private static final byte VALID = 1;
+	/** A lattice point at which the arm is invalid */
+	private static final byte INVALID = 2;
+
+	/** The checker for states and moves */
+	private StateChecker checker;
+	/** The number of lattice columns (values of the first angle) */
+	private int numColumns;
+	/** The number of lattice rows (values of the second angle) */
+	private int numRows;
+	/** The step between lattice points, in radians */
+	private double step;
+	/** The status of each lattice point */
+	private byte[] status;
+	/** The number of lattice points and moves checked by the last search */
+	private int numChecked;
+	/** The number of nodes expanded by the last search */
+	private int numExpanded;
+
+	/** The cost of reaching each node, and its parent */
+	private NodeCosts costs;
+	/** The nodes which have been expanded */
+	private BitSet closed;
+	/** The nodes waiting to be expanded, keyed by estimated total cost */
+	private IndexedHeap frontier;
+	/** The first angle of the start and goal, in that order */
+	private double[] angles1 = new double[2];
+	/** The second angle of the start and goal, in that order */
+	private double[] angles2 = new double[2];
+
+	/**
+	 * Constructs a planner with the given lattice step.
+	 * 
+	 * @param checker
+	 *            the checker for states and moves.
+	 * @param step
+	 *            the step between lattice points, in degrees; this is rounded
+	 *            down so that the steps divide the circle evenly.
+	 */
+	public GridPlanner(StateChecker checker, double step) {
+		if (!(step > 0)) {
+			throw new IllegalArgumentException("Invalid step: " + step);
+		}
+		this.checker = checker;
+		numColumns = (int) Math.ceil(360 / step);
+		numRows = numColumns + 1;
+		this.step = 2 * Math.PI / numColumns;
+		status = new byte[numColumns * numRows];
+		costs = new NodeCosts(status.length + 2);
+		closed = new BitSet(status.length + 2);
+		frontier = new IndexedHeap(status.length + 2);
+	}
+
+	/**
+	 * Returns the step between lattice points.
+	 * 
+	 * @return the step between lattice points, in degrees.
+	 */
+	public double getStep() {
+		return 360.0 / numColumns;
+	}
+
+	/**
+	 * Returns the number of lattice points and moves checked by the last
+	 * search; lattice points checked by earlier searches aren't counted.
+	 * 
+	 * @return the number of checks made by the last search.
+	 */
+	public int getNumChecked() {
+		return numChecked;
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last search.
+	 * 
+	 * @return the number of nodes expanded by the last search.
+	 */
+	public int getNumExpanded() {
+		return numExpanded;
+	}
+
+	/**
+	 * Finds the shortest path over the lattice between the given states.
+	 * 
+	 * @param start
+	 *            the initial state.
+	 * @param goal
+	 *            the goal state.
+	 * @return the states along the path, from start to goal inclusive, or
+	 *         null if the goal can't be reached.
+	 */
+	public List<RobotArmState> findPath(RobotArmState start, RobotArmState goal) {
+		int startNode = status.length;
+		int goalNode = status.length + 1;
+		angles1[0] = start.getAngle1();
+		angles2[0] = start.getAngle2();
+		angles1[1] = goal.getAngle1();
+		angles2[1] = goal.getAngle2();
+		int[] goalCorners = getCorners(goal.getAngle1(), goal.getAngle2());
+		costs.reset();
+		closed.clear();
+		frontier.clear();
+
+		numChecked = 0;
+		numExpanded = 0;
+		costs.set(startNode, 0, -1);
+		frontier.push(startNode, 0);
+		while (!frontier.isEmpty()) {
+			int node = frontier.poll();
+			closed.set(node);
+			numExpanded++;
+			if (node == goalNode) {
+				return buildPath(goalNode, start, goal);
+			}
+			double a1 = getAngle1(node);
+			double a2 = getAngle2(node);
+			if (node == startNode) {
+				for (int corner : getCorners(a1, a2)) {
+					relax(node, a1, a2, corner);
+				}
+				relax(node, a1, a2, goalNode);
+				continue;
+			}
+			int column = node / numRows;
+			int row = node % numRows;
+			for (int dc = -1; dc <= 1; dc++) {
+				int c = (column + dc + numColumns) % numColumns;
+				for (int dr = -1; dr <= 1; dr++) {
+					int r = row + dr;
+					if ((dc != 0 || dr != 0) && r >= 0 && r < numRows) {
+						relax(node, a1, a2, c * numRows + r);
+					}
+				}
+			}
+			for (int corner : goalCorners) {
+				if (corner == node) {
+					relax(node, a1, a2, goalNode);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Updates the cost of reaching the given node, if going via the given
+	 * parent is cheaper and the move between them is valid. The move is only
+	 * checked if it would improve the cost.
+	 */
+	private void relax(int parent, double a1, double a2, int node) {
+		if (closed.get(node)) {
+			return;
+		}
+		double b1 = getAngle1(node);
+		double b2 = getAngle2(node);
+		double newG = costs.getCost(parent)
+				+ StateTools.totalAngleDelta(a1, a2, b1, b2);
+		if (newG >= costs.getCost(node) || !isValid(node, b1, b2)) {
+			return;
+		}
+		numChecked++;
+		if (!checker.hasDirectPath(a1, a2, b1, b2)) {
+			return;
+		}
+		costs.set(node, newG, parent);
+		frontier.push(node,
+				newG + StateTools.totalAngleDelta(b1, b2, angles1[1], angles2[1]));
+	}
+
+	/**
+	 * Returns whether the arm is valid at the given node, checking the
+	 * lattice point if it hasn't been checked before. The start and goal are
+	 * assumed to be valid.
+	 */
+	private boolean isValid(int node, double angle1, double angle2) {
+		if (node >= status.length) {
+			return true;
+		}
+		if (status[node] == UNCHECKED) {
+			numChecked++;
+			status[node] = checker.isValidState(angle1, angle2) ? VALID
+					: INVALID;
+		}
+		return status[node] == VALID;
+	}
+
+	/**
+	 * Returns the lattice points at the corners of the lattice cell holding
+	 * the given angles. Angles beyond the last row are joined to the nearest
+	 * cell.
+	 */
+	private int[] getCorners(double angle1, double angle2) {
+		int column = (int) Math.floor((angle1 + Math.PI) / step);
+		column = ((column % numColumns) + numColumns) % numColumns;
+		int row = (int) Math.floor((angle2 + Math.PI) / step);
+		row = Math.max(0, Math.min(numRows - 2, row));
+		int next = (column + 1) % numColumns;
+		return new int[] { column * numRows + row, column * numRows + row + 1,
+				next * numRows + row, next * numRows + row + 1 };
+	}
+
+	/**
+	 * Returns the first angle at the given node.
+	 */
+	private double getAngle1(int node) {
+		if (node >= status.length) {
+			return angles1[node - status.length];
+		}
+		return -Math.PI + (node / numRows) * step;
+	}
+
+	/**
+	 * Returns the second angle at the given node.
+	 */
+	private double getAngle2(int node) {
+		if (node >= status.length) {
+			return angles2[node - status.length];
+		}
+		return -Math.PI + (node % numRows) * step;
+	}
+
+	/**
+	 * Follows the parent links back from the goal to build the path.
+	 */
+	private List<RobotArmState> buildPath(int goalNode, RobotArmState start,
+			RobotArmState goal) {
+		int[] nodes = costs.buildPath(goalNode);
+		List<RobotArmState> path = new ArrayList<RobotArmState>(nodes.length);
+		path.add(start);
+		for (int i = 1; i < nodes.length - 1; i++) {
+			path.add(new RobotArmState(start.getLength1(), start.getLength2(),
+					getAngle1(nodes[i]), getAngle2(nodes[i])));
+		}
+		path.add(goal);
+		return path;
+	}
+}
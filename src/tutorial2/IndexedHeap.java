@@ -0,0 +1,199 @@
+package tutorial2;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of integer IDs keyed by doubles, which supports lowering
+ * the key of an ID already in the heap. Each ID may be in the heap at most
+ * once, and the position of every ID is tracked, so no entries are ever left
+ * behind for a search to skip over. Apart from growing to fit larger IDs, the
+ * heap allocates nothing, so a single heap can be reused for any number of
+ * searches.
+ *
+ * @author lackofcheese
+ */
+public class IndexedHeap {
+	/** The IDs in the heap, in heap order */
+	private int[] ids;
+	/** The key of each ID in the heap, in heap order */
+	private double[] keys;
+	/** The position of each ID in the heap, or -1 if it isn't in the heap */
+	private int[] positions;
+	/** The number of IDs in the heap */
+	private int size;
+
+	/**
+	 * Constructs an empty heap for IDs less than the given capacity.
+	 *
+	 * @param capacity
+	 *            one more than the largest ID expected.
+	 */
+	public IndexedHeap(int capacity) {
+		ids = new int[capacity];
+		keys = new double[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	/**
+	 * Ensures that the heap can hold IDs less than the given capacity.
+	 *
+	 * @param capacity
+	 *            one more than the largest ID expected.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= positions.length) {
+			return;
+		}
+		int oldCapacity = positions.length;
+		ids = Arrays.copyOf(ids, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		Arrays.fill(positions, oldCapacity, capacity, -1);
+	}
+
+	/**
+	 * Returns the number of IDs in the heap.
+	 *
+	 * @return the number of IDs in the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return true if the heap is empty, and false otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns whether the given ID is in the heap.
+	 *
+	 * @param id
+	 *            the ID.
+	 * @return true if the ID is in the heap, and false otherwise.
+	 */
+	public boolean contains(int id) {
+		return positions[id] >= 0;
+	}
+
+	/**
+	 * Adds the given ID to the heap with the given key, or lowers its key if
+	 * it is already in the heap. The key of an ID is never raised.
+	 *
+	 * @param id
+	 *            the ID.
+	 * @param key
+	 *            the key.
+	 */
+	public void push(int id, double key) {
+		int position = positions[id];
+		if (position < 0) {
+			position = size++;
+		} else if (!(key < keys[position])) {
+			return;
+		}
+		siftUp(position, id, key);
+	}
+
+	/**
+	 * Returns the ID with the lowest key, without removing it.
+	 *
+	 * @return the ID with the lowest key.
+	 */
+	public int peek() {
+		if (size == 0) {
+			throw new IllegalStateException("Heap is empty");
+		}
+		return ids[0];
+	}
+
+	/**
+	 * Returns the lowest key in the heap.
+	 *
+	 * @return the lowest key in the heap.
+	 */
+	public double peekKey() {
+		if (size == 0) {
+			throw new IllegalStateException("Heap is empty");
+		}
+		return keys[0];
+	}
+
+	/**
+	 * Removes the ID with the lowest key from the heap, and returns it.
+	 *
+	 * @return the ID with the lowest key.
+	 */
+	public int poll() {
+		int id = peek();
+		positions[id] = -1;
+		size--;
+		if (size > 0) {
+			siftDown(0, ids[size], keys[size]);
+		}
+		return id;
+	}
+
+	/**
+	 * Removes every ID from the heap; this takes time proportional to the
+	 * number of IDs in the heap, not its capacity.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[ids[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Moves the given ID and key up from the given position until its parent
+	 * has a lower key.
+	 */
+	private void siftUp(int position, int id, double key) {
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (!(key < keys[parent])) {
+				break;
+			}
+			place(position, ids[parent], keys[parent]);
+			position = parent;
+		}
+		place(position, id, key);
+	}
+
+	/**
+	 * Moves the given ID and key down from the given position until neither
+	 * of its children has a lower key.
+	 */
+	private void siftDown(int position, int id, double key) {
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (!(keys[child] < key)) {
+				break;
+			}
+			place(position, ids[child], keys[child]);
+			position = child;
+		}
+		place(position, id, key);
+	}
+
+	/**
+	 * Puts the given ID and key at the given position.
+	 */
+	private void place(int position, int id, double key) {
+		ids[position] = id;
+		keys[position] = key;
+		positions[id] = position;
+	}
+}
@@ -0,0 +1,87 @@
+package tutorial2;
+
+import java.util.Arrays;
+
+/**
+ * A minimal growable list of primitive ints, used in place of a
+ * List&lt;Integer&gt; on the hot paths of the solver so that no boxing takes
+ * place.
+ * 
+ * @author lackofcheese
+ */
+public class IntList {
+	/** The backing array */
+	private int[] data;
+	/** The number of values currently stored */
+	private int size = 0;
+
+	/**
+	 * Constructs an empty list with a small default capacity.
+	 */
+	public IntList() {
+		this(16);
+	}
+
+	/**
+	 * Constructs an empty list with the given initial capacity.
+	 * 
+	 * @param capacity
+	 *            the initial capacity.
+	 */
+	public IntList(int capacity) {
+		data = new int[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Appends the given value to the end of this list.
+	 * 
+	 * @param value
+	 *            the value to add.
+	 */
+	public void add(int value) {
+		if (size == data.length) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		data[size++] = value;
+	}
+
+	/**
+	 * Returns the value at the given index.
+	 * 
+	 * @param index
+	 *            the index of the value.
+	 * @return the value at the given index.
+	 */
+	public int get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+		return data[index];
+	}
+
+	/**
+	 * Returns the number of values in this list.
+	 * 
+	 * @return the number of values in this list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all of the values from this list.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns a copy of the contents of this list as an array.
+	 * 
+	 * @return a copy of the contents of this list as an array.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+}
@@ -0,0 +1,130 @@
+package tutorial2;
+
+import java.util.Arrays;
+
+/**
+ * The cost of reaching each node of a graph, and the parent it was reached
+ * from, for a search over integer node IDs. Each entry is stamped with the
+ * search that set it, so starting a new search just means moving on to the
+ * next stamp; nothing needs to be cleared or allocated between searches.
+ *
+ * @author lackofcheese
+ */
+public class NodeCosts {
+	/** The cost of reaching each node */
+	private double[] costs;
+	/** The parent of each node, or -1 for the root */
+	private int[] parents;
+	/** The search in which the entry for each node was set */
+	private int[] stamps;
+	/** The current search */
+	private int stamp = 1;
+
+	/**
+	 * Constructs costs for nodes with IDs less than the given capacity.
+	 *
+	 * @param capacity
+	 *            one more than the largest node ID expected.
+	 */
+	public NodeCosts(int capacity) {
+		costs = new double[capacity];
+		parents = new int[capacity];
+		stamps = new int[capacity];
+	}
+
+	/**
+	 * Ensures that there is room for nodes with IDs less than the given
+	 * capacity.
+	 *
+	 * @param capacity
+	 *            one more than the largest node ID expected.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > stamps.length) {
+			costs = Arrays.copyOf(costs, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+		}
+	}
+
+	/**
+	 * Forgets the costs of every node, ready for a new search.
+	 */
+	public void reset() {
+		stamp++;
+		if (stamp == 0) {
+			// The stamps have wrapped around, so old ones could be reused.
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Returns whether the given node has been reached in this search.
+	 *
+	 * @param node
+	 *            the ID of the node.
+	 * @return true if the node has been reached, and false otherwise.
+	 */
+	public boolean isReached(int node) {
+		return stamps[node] == stamp;
+	}
+
+	/**
+	 * Returns the cost of reaching the given node.
+	 *
+	 * @param node
+	 *            the ID of the node.
+	 * @return the cost of reaching the node, or positive infinity if it
+	 *         hasn't been reached in this search.
+	 */
+	public double getCost(int node) {
+		return stamps[node] == stamp ? costs[node] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the parent of the given node, which must have been reached.
+	 *
+	 * @param node
+	 *            the ID of the node.
+	 * @return the parent of the node, or -1 if it is the root.
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * Sets the cost of reaching the given node, and its parent.
+	 *
+	 * @param node
+	 *            the ID of the node.
+	 * @param cost
+	 *            the cost of reaching the node.
+	 * @param parent
+	 *            the parent of the node, or -1 if it is the root.
+	 */
+	public void set(int node, double cost, int parent) {
+		costs[node] = cost;
+		parents[node] = parent;
+		stamps[node] = stamp;
+	}
+
+	/**
+	 * Follows the parent links back from the given node to the root.
+	 *
+	 * @param node
+	 *            the ID of the node, which must have been reached.
+	 * @return the IDs of the nodes from the root to the given node.
+	 */
+	public int[] buildPath(int node) {
+		int length = 0;
+		for (int n = node; n != -1; n = parents[n]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int n = node; n != -1; n = parents[n]) {
+			path[--length] = n;
+		}
+		return path;
+	}
+}
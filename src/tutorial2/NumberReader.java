@@ -0,0 +1,238 @@
+package tutorial2;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads whitespace-separated numbers, line by line, from the bytes of a text
+ * file that has been read in whole. Numbers are parsed straight from the
+ * bytes, so nothing is allocated per line or per number; the only exceptions
+ * are numbers too long or unusual for the fast path, which are handed to
+ * Double.parseDouble and so give exactly the same result.
+ * 
+ * Errors are reported as by Scanner, so callers can handle them in the same
+ * way: NoSuchElementException if the line has run out of numbers, and
+ * InputMismatchException if the next token isn't a number.
+ * 
+ * @author lackofcheese
+ */
+public class NumberReader {
+	/** Powers of ten that are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+	/** The most significant digits that always fit in a double exactly */
+	private static final int MAX_FAST_DIGITS = 15;
+
+	/** The contents of the file */
+	private byte[] data;
+	/** The position of the next byte to read */
+	private int position;
+	/** The end of the current line */
+	private int lineEnd;
+	/** The start of the next line */
+	private int nextLine;
+	/** The number of the current line, from 1; 0 before the first line */
+	private int lineNo;
+
+	/**
+	 * Constructs a reader over the given bytes; call nextLine to move to the
+	 * first line.
+	 * 
+	 * @param data
+	 *            the bytes to read.
+	 */
+	public NumberReader(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Constructs a reader over the contents of the given file; call nextLine
+	 * to move to the first line.
+	 * 
+	 * @param filename
+	 *            the file to read.
+	 * @return the reader.
+	 * @throws IOException
+	 *             if the file can't be read.
+	 */
+	public static NumberReader open(String filename) throws IOException {
+		return new NumberReader(Files.readAllBytes(Paths.get(filename)));
+	}
+
+	/**
+	 * Constructs a reader positioned at the start of the given single line.
+	 * 
+	 * @param line
+	 *            the line to read.
+	 * @return the reader.
+	 */
+	public static NumberReader forLine(String line) {
+		NumberReader reader = new NumberReader(line.getBytes(Charset
+				.forName("ISO-8859-1")));
+		reader.nextLine();
+		return reader;
+	}
+
+	/**
+	 * Moves to the start of the next line. As with BufferedReader.readLine,
+	 * lines may end with "\n", "\r" or "\r\n", and there is no empty line
+	 * after a final line ending.
+	 * 
+	 * @return true if there is another line, or false if the end of the data
+	 *         has been reached.
+	 */
+	public boolean nextLine() {
+		if (nextLine >= data.length) {
+			position = lineEnd = nextLine = data.length;
+			return false;
+		}
+		position = nextLine;
+		int end = position;
+		while (end < data.length && data[end] != '\n' && data[end] != '\r') {
+			end++;
+		}
+		lineEnd = end;
+		if (end < data.length && data[end] == '\r') {
+			end++;
+		}
+		if (end < data.length && data[end] == '\n') {
+			end++;
+		}
+		nextLine = end;
+		lineNo++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of the current line.
+	 * 
+	 * @return the number of the current line, from 1, or 0 if nextLine
+	 *         hasn't been called yet.
+	 */
+	public int getLineNo() {
+		return lineNo;
+	}
+
+	/**
+	 * Returns whether there are any tokens left on the current line.
+	 * 
+	 * @return true if there are tokens left on the current line.
+	 */
+	public boolean hasNext() {
+		skipWhitespace();
+		return position < lineEnd;
+	}
+
+	/**
+	 * Reads the next number on the current line.
+	 * 
+	 * @return the number.
+	 * @throws NoSuchElementException
+	 *             if there are no tokens left on the current line.
+	 * @throws InputMismatchException
+	 *             if the next token isn't a number.
+	 */
+	public double nextDouble() {
+		skipWhitespace();
+		if (position >= lineEnd) {
+			throw new NoSuchElementException();
+		}
+		int start = position;
+		while (position < lineEnd && !isWhitespace(data[position])) {
+			position++;
+		}
+		double value = parseFast(start, position);
+		if (Double.isNaN(value)) {
+			value = parseSlow(start, position);
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a plain decimal number, such as "-12.345", with few enough
+	 * significant digits that both they and the power of ten to divide them
+	 * by are exact as doubles; the quotient is then correctly rounded, just
+	 * as Double.parseDouble would round it.
+	 * 
+	 * @return the number, or NaN if the token isn't such a number.
+	 */
+	private double parseFast(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (data[i] == '-' || data[i] == '+') {
+			negative = data[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int numDigits = 0;
+		int scale = 0;
+		boolean seenPoint = false;
+		boolean seenDigit = false;
+		for (; i < end; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				seenDigit = true;
+				if (mantissa == 0 && b == '0') {
+					// Leading zeros aren't significant.
+				} else if (++numDigits > MAX_FAST_DIGITS) {
+					return Double.NaN;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (seenPoint) {
+					scale++;
+				}
+			} else if (b == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				return Double.NaN;
+			}
+		}
+		if (!seenDigit || scale >= POWERS_OF_TEN.length) {
+			return Double.NaN;
+		}
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses any number that Double.parseDouble accepts.
+	 * 
+	 * @throws InputMismatchException
+	 *             if the token isn't a number.
+	 */
+	private double parseSlow(int start, int end) {
+		String token = new String(data, start, end - start,
+				Charset.forName("ISO-8859-1"));
+		try {
+			return Double.parseDouble(token);
+		} catch (NumberFormatException e) {
+			throw new InputMismatchException("For input string: \""
+					+ token + "\"");
+		}
+	}
+
+	/**
+	 * Skips the whitespace at the current position.
+	 */
+	private void skipWhitespace() {
+		while (position < lineEnd && isWhitespace(data[position])) {
+			position++;
+		}
+	}
+
+	/**
+	 * Returns whether the given byte is whitespace.
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+}
@@ -1,11 +1,7 @@
 package tutorial2;
 
 import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 /**
  * This class represents one of the rectangular obstacles in Tutorial 2.
@@ -41,19 +37,31 @@ public class Obstacle {
 	 * @param str
 	 */
 	public Obstacle(String str) throws NoSuchElementException {
-		Scanner s = new Scanner(str);
-		List<Double> xs = new ArrayList<Double>();
-		List<Double> ys = new ArrayList<Double>();
+		this(NumberReader.forLine(str));
+	}
+
+	/**
+	 * Constructs an obstacle from the current line of the given reader, which
+	 * holds the x- and y- coordinates of all of the corners of the rectangle,
+	 * as in the input file.
+	 * 
+	 * @param input
+	 *            the reader, positioned at the start of the coordinates.
+	 */
+	public Obstacle(NumberReader input) throws NoSuchElementException {
+		double xMin = Double.POSITIVE_INFINITY;
+		double xMax = Double.NEGATIVE_INFINITY;
+		double yMin = Double.POSITIVE_INFINITY;
+		double yMax = Double.NEGATIVE_INFINITY;
 		for (int i = 0; i < 4; i++) {
-			xs.add(s.nextDouble());
-			ys.add(s.nextDouble());
+			double x = input.nextDouble();
+			double y = input.nextDouble();
+			xMin = Math.min(xMin, x);
+			xMax = Math.max(xMax, x);
+			yMin = Math.min(yMin, y);
+			yMax = Math.max(yMax, y);
 		}
-		double xMin = Collections.min(xs);
-		double xMax = Collections.max(xs);
-		double yMin = Collections.min(ys);
-		double yMax = Collections.max(ys);
 		this.rect = new Rectangle2D.Double(xMin, yMin, xMax - xMin, yMax - yMin);
-		s.close();
 	}
 
 	/**
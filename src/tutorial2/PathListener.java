@@ -0,0 +1,26 @@
+package tutorial2;
+
+import java.util.List;
+
+/**
+ * Receives the paths found by an anytime search, each one shorter than the
+ * last.
+ * 
+ * @author lackofcheese
+ */
+public interface PathListener {
+	/**
+	 * Called whenever a shorter path has been found.
+	 * 
+	 * @param path
+	 *            the states along the path, from the initial state to the
+	 *            goal state.
+	 * @param cost
+	 *            the total angle delta along the path, in degrees.
+	 * @param numStates
+	 *            the number of sampled states in the roadmap the path was
+	 *            found in.
+	 */
+	public void pathImproved(List<RobotArmState> path, double cost,
+			int numStates);
+}
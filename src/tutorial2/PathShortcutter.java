@@ -0,0 +1,199 @@
+package tutorial2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shortens a path by removing the waypoints it doesn't need. Wherever there
+ * is a direct path between two waypoints that aren't adjacent, the waypoints
+ * between them are dropped. Since the total angle delta obeys the triangle
+ * inequality, this never makes the path more costly.
+ * 
+ * The path is split into chunks of consecutive waypoints, which are
+ * shortcut in parallel: within each chunk, the path is pulled tight greedily,
+ * from each kept waypoint to the furthest waypoint in the chunk that it can
+ * reach directly. Rounds alternate between two sets of chunk boundaries, so
+ * that waypoints near a boundary in one round are inside a chunk in the next;
+ * once neither set of chunks yields anything more, the chunks are doubled in
+ * size, until a single chunk covers the whole path. Every check is made
+ * against a deadline; once it passes, the rest of the path is left as it is.
+ * 
+ * @author lackofcheese
+ */
+public class PathShortcutter {
+	/** The number of waypoint gaps in each chunk in the first round */
+	private static final int INITIAL_CHUNK_SIZE = 16;
+
+	/** The checker for direct paths */
+	private StateChecker checker;
+	/** The executor to run the chunks on, or null */
+	private ExecutorService executor;
+	/** The number of direct paths checked by the last call to shortcut */
+	private final AtomicInteger numChecked = new AtomicInteger();
+
+	/**
+	 * Constructs a shortcutter.
+	 * 
+	 * @param checker
+	 *            the checker for direct paths.
+	 * @param executor
+	 *            the executor to shortcut the chunks on, or null to shortcut
+	 *            them on this thread.
+	 */
+	public PathShortcutter(StateChecker checker, ExecutorService executor) {
+		this.checker = checker;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the number of direct paths checked by the last call to
+	 * shortcut.
+	 * 
+	 * @return the number of direct paths checked.
+	 */
+	public int getNumChecked() {
+		return numChecked.get();
+	}
+
+	/**
+	 * Removes the waypoints that aren't needed from the given path, for at
+	 * most the given time.
+	 * 
+	 * @param path
+	 *            the path to shorten; it isn't modified.
+	 * @param budgetMillis
+	 *            the time allowed, in milliseconds.
+	 * @return the shortened path, which has the same first and last states.
+	 */
+	public List<RobotArmState> shortcut(List<RobotArmState> path,
+			long budgetMillis) {
+		long deadline = System.nanoTime() + budgetMillis * 1000000;
+		numChecked.set(0);
+		int chunkSize = INITIAL_CHUNK_SIZE;
+		boolean shifted = false;
+		while (path.size() > 2 && System.nanoTime() < deadline) {
+			int numGaps = path.size() - 1;
+			int offset = shifted ? chunkSize / 2 : 0;
+			List<RobotArmState> shortened = runRound(path, chunkSize, offset,
+					deadline);
+			boolean improved = shortened.size() < path.size();
+			path = shortened;
+			if (improved) {
+				shifted = !shifted;
+			} else if (chunkSize >= numGaps) {
+				break;
+			} else if (!shifted) {
+				shifted = true;
+			} else {
+				chunkSize *= 2;
+				shifted = false;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Shortcuts each chunk of the path, and joins the results.
+	 * 
+	 * @param path
+	 *            the path to shorten.
+	 * @param chunkSize
+	 *            the number of waypoint gaps in each chunk.
+	 * @param offset
+	 *            the number of waypoint gaps in the first chunk, or 0 if it
+	 *            is the full size.
+	 * @param deadline
+	 *            the time at which to stop checking, as per System.nanoTime.
+	 * @return the shortened path.
+	 */
+	private List<RobotArmState> runRound(final List<RobotArmState> path,
+			int chunkSize, int offset, final long deadline) {
+		int last = path.size() - 1;
+		List<Callable<IntList>> tasks = new ArrayList<Callable<IntList>>();
+		int end = offset > 0 ? offset : chunkSize;
+		for (int start = 0; start < last; start = end, end += chunkSize) {
+			final int first = start;
+			final int chunkEnd = Math.min(last, end);
+			tasks.add(new Callable<IntList>() {
+				@Override
+				public IntList call() {
+					return shortcutChunk(path, first, chunkEnd, deadline);
+				}
+			});
+		}
+
+		List<IntList> kept = new ArrayList<IntList>(tasks.size());
+		if (executor == null || tasks.size() == 1) {
+			for (Callable<IntList> task : tasks) {
+				try {
+					kept.add(task.call());
+				} catch (Exception e) {
+					throw new IllegalStateException("Shortcutter failed", e);
+				}
+			}
+		} else {
+			try {
+				for (Future<IntList> future : executor.invokeAll(tasks)) {
+					kept.add(future.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while shortcutting", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Shortcutter failed",
+						e.getCause());
+			}
+		}
+
+		List<RobotArmState> shortened = new ArrayList<RobotArmState>();
+		for (IntList indices : kept) {
+			for (int k = 0; k < indices.size(); k++) {
+				shortened.add(path.get(indices.get(k)));
+			}
+		}
+		shortened.add(path.get(last));
+		return shortened;
+	}
+
+	/**
+	 * Pulls the path between the given waypoints tight.
+	 * 
+	 * @param path
+	 *            the path to shorten.
+	 * @param first
+	 *            the index of the first waypoint of the chunk.
+	 * @param end
+	 *            the index of the last waypoint of the chunk.
+	 * @param deadline
+	 *            the time at which to stop checking, as per System.nanoTime.
+	 * @return the indices of the waypoints kept, from first up to but not
+	 *         including end.
+	 */
+	private IntList shortcutChunk(List<RobotArmState> path, int first,
+			int end, long deadline) {
+		IntList kept = new IntList();
+		int anchor = first;
+		while (anchor < end) {
+			kept.add(anchor);
+			int next = anchor + 1;
+			for (int j = end; j > anchor + 1; j--) {
+				if (System.nanoTime() >= deadline) {
+					break;
+				}
+				numChecked.incrementAndGet();
+				if (checker.hasDirectPath(path.get(anchor), path.get(j))) {
+					next = j;
+					break;
+				}
+			}
+			anchor = next;
+		}
+		return kept;
+	}
+}
@@ -1,13 +1,13 @@
 package tutorial2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 /**
  * This class represents the specifications of a given problem and solution;
@@ -54,38 +54,30 @@ public class ProblemSpec {
 	public void loadProblem(String filename) throws IOException {
 		problemLoaded = false;
 		solutionLoaded = false;
-		BufferedReader input = new BufferedReader(new FileReader(filename));
+		NumberReader input = NumberReader.open(filename);
 		int lineNo = 0;
-		String line;
-		Scanner s;
 		try {
 			lineNo++;
-			line = input.readLine();
-			s = new Scanner(line);
-			length1 = s.nextDouble();
-			length2 = s.nextDouble();
-			s.close();
+			expectLine(input, lineNo);
+			length1 = input.nextDouble();
+			length2 = input.nextDouble();
 
 			lineNo++;
-			line = input.readLine();
-			s = new Scanner(line);
-			double angle1 = Math.toRadians(s.nextDouble());
-			double angle2 = Math.toRadians(s.nextDouble());
-			s.close();
+			expectLine(input, lineNo);
+			double angle1 = Math.toRadians(input.nextDouble());
+			double angle2 = Math.toRadians(input.nextDouble());
 			initialState = new RobotArmState(length1, length2, angle1, angle2);
 
 			lineNo++;
-			line = input.readLine();
-			s = new Scanner(line);
-			angle1 = Math.toRadians(s.nextDouble());
-			angle2 = Math.toRadians(s.nextDouble());
-			s.close();
+			expectLine(input, lineNo);
+			angle1 = Math.toRadians(input.nextDouble());
+			angle2 = Math.toRadians(input.nextDouble());
 			goalState = new RobotArmState(length1, length2, angle1, angle2);
 
 			obstacles = new ArrayList<Obstacle>();
-			while ((line = input.readLine()) != null) {
+			while (input.nextLine()) {
 				lineNo++;
-				obstacles.add(new Obstacle(line));
+				obstacles.add(new Obstacle(input));
 			}
 			problemLoaded = true;
 		} catch (InputMismatchException e) {
@@ -95,21 +87,35 @@ public class ProblemSpec {
 		} catch (NoSuchElementException e) {
 			throw new IOException(String.format("Not enough tokens on line %d",
 					lineNo));
-		} catch (NullPointerException e) {
+		}
+	}
+
+	/**
+	 * Moves the given reader on to the next line, which must exist.
+	 * 
+	 * @param input
+	 *            the reader.
+	 * @param lineNo
+	 *            the number of the line.
+	 * @throws IOException
+	 *             if the file has ended.
+	 */
+	private static void expectLine(NumberReader input, int lineNo)
+			throws IOException {
+		if (!input.nextLine()) {
 			throw new IOException(String.format(
 					"Line %d expected, but file ended.", lineNo));
-		} finally {
-			input.close();
 		}
 	}
 
 	/**
-	 * Loads a solution from a solution text file.
+	 * Loads a solution from a solution file, which may be either a text file
+	 * or a binary path file written by SolutionWriter.
 	 * 
 	 * @param filename
-	 *            the text file to load.
+	 *            the file to load.
 	 * @throws IOException
-	 *             if the text file doesn't exist or doesn't meet the assignment
+	 *             if the file doesn't exist or doesn't meet the assignment
 	 *             specifications.
 	 */
 	public void loadSolution(String filename) throws IOException {
@@ -117,17 +123,23 @@ public class ProblemSpec {
 			return;
 		}
 		solutionLoaded = false;
-		BufferedReader input = new BufferedReader(new FileReader(filename));
-		String line;
+		byte[] data = Files.readAllBytes(Paths.get(filename));
+		if (data.length >= 4) {
+			int magic = ByteBuffer.wrap(data).getInt(0);
+			if (magic == SolutionWriter.PATH_MAGIC
+					|| magic == SolutionWriter.BATCH_MAGIC) {
+				loadBinarySolution(filename, data);
+				return;
+			}
+		}
+		NumberReader input = new NumberReader(data);
 		int lineNo = 0;
 		path = new ArrayList<RobotArmState>();
 		try {
-			while ((line = input.readLine()) != null) {
+			while (input.nextLine()) {
 				lineNo++;
-				Scanner s = new Scanner(line);
-				double angle1 = Math.toRadians(s.nextDouble());
-				double angle2 = Math.toRadians(s.nextDouble());
-				s.close();
+				double angle1 = Math.toRadians(input.nextDouble());
+				double angle2 = Math.toRadians(input.nextDouble());
 				RobotArmState ras = new RobotArmState(length1, length2, angle1,
 						angle2);
 				path.add(ras);
@@ -140,12 +152,80 @@ public class ProblemSpec {
 		} catch (NoSuchElementException e) {
 			throw new IOException(String.format(
 					"Not enough tokens on line %d - 2 required", lineNo));
-		} catch (NullPointerException e) {
+		}
+	}
+
+	/**
+	 * Loads a solution from a binary path file, as per SolutionWriter.
+	 * 
+	 * @param filename
+	 *            the name of the file.
+	 * @param data
+	 *            the contents of the file.
+	 * @throws IOException
+	 *             if the file isn't a binary path file, or is truncated.
+	 */
+	private void loadBinarySolution(String filename, byte[] data)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (data.length < SolutionWriter.FILE_HEADER_SIZE
+				|| buffer.getInt() != SolutionWriter.PATH_MAGIC
+				|| buffer.getInt() != SolutionWriter.FILE_VERSION) {
+			throw new IOException("Not a binary path file: " + filename);
+		}
+		if ((data.length - SolutionWriter.FILE_HEADER_SIZE) % 8 != 0) {
+			throw new IOException("Solution file is truncated: " + filename);
+		}
+		int numStates = (data.length - SolutionWriter.FILE_HEADER_SIZE) / 8;
+		path = new ArrayList<RobotArmState>(numStates);
+		for (int i = 0; i < numStates; i++) {
+			double angle1 = buffer.getFloat();
+			double angle2 = buffer.getFloat();
+			path.add(new RobotArmState(length1, length2, angle1, angle2));
+		}
+		solutionLoaded = true;
+	}
+
+	/**
+	 * Loads a list of queries from a text file, for the currently loaded
+	 * problem's robot arm. Each non-blank line of the file holds the two
+	 * initial angles followed by the two goal angles, in degrees.
+	 * 
+	 * @param filename
+	 *            the text file to load.
+	 * @return the queries, each as an array of the initial and goal states.
+	 * @throws IOException
+	 *             if the text file doesn't exist or is invalid.
+	 */
+	public List<RobotArmState[]> loadQueries(String filename)
+			throws IOException {
+		NumberReader input = NumberReader.open(filename);
+		int lineNo = 0;
+		List<RobotArmState[]> queries = new ArrayList<RobotArmState[]>();
+		try {
+			while (input.nextLine()) {
+				lineNo++;
+				if (!input.hasNext()) {
+					continue;
+				}
+				RobotArmState[] query = new RobotArmState[2];
+				for (int i = 0; i < 2; i++) {
+					double angle1 = Math.toRadians(input.nextDouble());
+					double angle2 = Math.toRadians(input.nextDouble());
+					query[i] = new RobotArmState(length1, length2, angle1,
+							angle2);
+				}
+				queries.add(query);
+			}
+		} catch (InputMismatchException e) {
 			throw new IOException(String.format(
-					"Line %d expected, but file ended.", lineNo));
-		} finally {
-			input.close();
+					"Invalid number format on line %d: %s", lineNo,
+					e.getMessage()));
+		} catch (NoSuchElementException e) {
+			throw new IOException(String.format(
+					"Not enough tokens on line %d - 4 required", lineNo));
 		}
+		return queries;
 	}
 
 	/**
@@ -202,6 +282,40 @@ public class ProblemSpec {
 		return new ArrayList<Obstacle>(obstacles);
 	}
 
+	/**
+	 * Adds an obstacle to the problem.
+	 * 
+	 * @param obstacle
+	 *            the obstacle to add.
+	 */
+	public void addObstacle(Obstacle obstacle) {
+		obstacles.add(obstacle);
+	}
+
+	/**
+	 * Replaces the obstacle at the given index.
+	 * 
+	 * @param index
+	 *            the index of the obstacle, as per getObstacles.
+	 * @param obstacle
+	 *            the obstacle to put in its place.
+	 * @return the obstacle that was replaced.
+	 */
+	public Obstacle setObstacle(int index, Obstacle obstacle) {
+		return obstacles.set(index, obstacle);
+	}
+
+	/**
+	 * Removes the obstacle at the given index.
+	 * 
+	 * @param index
+	 *            the index of the obstacle, as per getObstacles.
+	 * @return the obstacle that was removed.
+	 */
+	public Obstacle removeObstacle(int index) {
+		return obstacles.remove(index);
+	}
+
 	/**
 	 * Returns the cost of the solution.
 	 * 
@@ -0,0 +1,635 @@
+package tutorial2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A roadmap over sampled robot arm configurations, identified by integer IDs
+ * and stored in compressed sparse row form: the edges leaving node i are
+ * those with indices from getFirstEdge(i) up to (but excluding)
+ * getEndEdge(i). Everything is held in flat primitive arrays, so a node costs
+ * 20 bytes and an edge 9 bytes, as opposed to the several hundred bytes per
+ * state and per successor of a graph of RobotArmStates; use a
+ * RoadmapStateAdapter to run the search algorithms on it.
+ * 
+ * Every edge is stored in both directions, and carries a status recording
+ * whether its direct path has been checked yet; this allows the edges to be
+ * validated lazily, as and when a search needs them.
+ * 
+ * @author lackofcheese
+ */
+public class Roadmap {
+	/** Status of an edge whose direct path hasn't been checked yet */
+	public static final byte UNCHECKED = 0;
+	/** Status of an edge whose direct path is known to be valid */
+	public static final byte VALID = 1;
+	/** Status of an edge whose direct path is known to be blocked */
+	public static final byte INVALID = 2;
+
+	/** The magic number at the start of a roadmap file ("RMAP") */
+	private static final int FILE_MAGIC = 0x524D4150;
+	/** The version of the roadmap file format */
+	private static final int FILE_VERSION = 1;
+	/** The size of the header of a roadmap file, in bytes */
+	private static final int FILE_HEADER_SIZE = 32;
+
+	/** The maximum total angle delta between neighbours */
+	private double maxAngleDelta;
+	/** The first angle of each node */
+	private double[] angles1;
+	/** The second angle of each node */
+	private double[] angles2;
+	/** The index of the first edge of each node, plus the total at the end */
+	private int[] offsets;
+	/** The target node of each edge */
+	private int[] neighbours;
+	/** The cost (total angle delta) of each edge */
+	private float[] costs;
+	/** The status of each edge */
+	private byte[] edgeStatus;
+	/** An index over the nodes; created on first use */
+	private StateIndex index;
+
+	/**
+	 * Constructs a roadmap directly from its arrays.
+	 * 
+	 * @param maxAngleDelta
+	 *            the maximum total angle delta between neighbours.
+	 * @param angles1
+	 *            the first angle of each node.
+	 * @param angles2
+	 *            the second angle of each node.
+	 * @param offsets
+	 *            the index of the first edge of each node, followed by the
+	 *            total number of edges.
+	 * @param neighbours
+	 *            the target node of each edge.
+	 * @param costs
+	 *            the cost of each edge.
+	 * @param edgeStatus
+	 *            the status of each edge.
+	 */
+	public Roadmap(double maxAngleDelta, double[] angles1, double[] angles2,
+			int[] offsets, int[] neighbours, float[] costs, byte[] edgeStatus) {
+		this.maxAngleDelta = maxAngleDelta;
+		this.angles1 = angles1;
+		this.angles2 = angles2;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.costs = costs;
+		this.edgeStatus = edgeStatus;
+	}
+
+	/**
+	 * Builds a roadmap with the given nodes and connections; every edge is
+	 * marked as VALID.
+	 * 
+	 * @param maxAngleDelta
+	 *            the maximum total angle delta between neighbours.
+	 * @param angles1
+	 *            the first angle of each node.
+	 * @param angles2
+	 *            the second angle of each node.
+	 * @param connections
+	 *            the pairs of connected nodes, as consecutive IDs; each pair
+	 *            is added in both directions.
+	 * @return the roadmap.
+	 */
+	public static Roadmap build(double maxAngleDelta, double[] angles1,
+			double[] angles2, IntList connections) {
+		int numNodes = angles1.length;
+		int[] offsets = new int[numNodes + 1];
+		for (int k = 0; k < connections.size(); k++) {
+			offsets[connections.get(k) + 1]++;
+		}
+		for (int i = 0; i < numNodes; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, numNodes);
+		int[] neighbours = new int[connections.size()];
+		for (int k = 0; k < connections.size(); k += 2) {
+			int i = connections.get(k);
+			int j = connections.get(k + 1);
+			neighbours[next[i]++] = j;
+			neighbours[next[j]++] = i;
+		}
+		byte[] edgeStatus = new byte[neighbours.length];
+		Arrays.fill(edgeStatus, VALID);
+		return new Roadmap(maxAngleDelta, angles1, angles2, offsets,
+				neighbours, computeCosts(angles1, angles2, offsets,
+						neighbours), edgeStatus);
+	}
+
+	/**
+	 * Builds a roadmap over the given states, connecting every pair of states
+	 * within the given total angle delta of each other. None of the edges are
+	 * checked for collisions; they are all left UNCHECKED.
+	 * 
+	 * @param states
+	 *            the states to use as nodes; node i is states.get(i).
+	 * @param maxAngleDelta
+	 *            the maximum allowable delta between neighbours.
+	 * @return the unchecked roadmap.
+	 */
+	public static Roadmap buildUnchecked(List<RobotArmState> states,
+			double maxAngleDelta) {
+		int numNodes = states.size();
+		double[] angles1 = getAngles1(states);
+		double[] angles2 = getAngles2(states);
+		StateIndex index = new StateIndex(maxAngleDelta);
+		for (int i = 0; i < numNodes; i++) {
+			index.add(angles1[i], angles2[i]);
+		}
+
+		int[] offsets = new int[numNodes + 1];
+		IntList edges = new IntList(numNodes * 8);
+		IntList found = new IntList();
+		for (int i = 0; i < numNodes; i++) {
+			found.clear();
+			index.findNeighbours(angles1[i], angles2[i], maxAngleDelta, found);
+			for (int k = 0; k < found.size(); k++) {
+				if (found.get(k) != i) {
+					edges.add(found.get(k));
+				}
+			}
+			offsets[i + 1] = edges.size();
+		}
+		int[] neighbours = edges.toArray();
+		Roadmap roadmap = new Roadmap(maxAngleDelta, angles1, angles2,
+				offsets, neighbours, computeCosts(angles1, angles2, offsets,
+						neighbours), new byte[neighbours.length]);
+		roadmap.index = index;
+		return roadmap;
+	}
+
+	/**
+	 * Returns a copy of this roadmap with the given nodes and connections
+	 * added. The existing edges keep their costs and statuses, and only the
+	 * costs of the new edges are computed, so this takes time linear in the
+	 * size of the roadmap. The neighbour index of this roadmap is handed over
+	 * to the new one, with the new nodes added to it.
+	 * 
+	 * @param newAngles1
+	 *            the first angle of each new node.
+	 * @param newAngles2
+	 *            the second angle of each new node.
+	 * @param connections
+	 *            the new pairs of connected nodes, as consecutive IDs; the
+	 *            new nodes are numbered from getNumNodes() onwards, and each
+	 *            pair is added in both directions.
+	 * @param status
+	 *            the status of the new edges.
+	 * @return the extended roadmap.
+	 */
+	public Roadmap extend(double[] newAngles1, double[] newAngles2,
+			IntList connections, byte status) {
+		int oldNumNodes = angles1.length;
+		int numNodes = oldNumNodes + newAngles1.length;
+		double[] allAngles1 = Arrays.copyOf(angles1, numNodes);
+		double[] allAngles2 = Arrays.copyOf(angles2, numNodes);
+		System.arraycopy(newAngles1, 0, allAngles1, oldNumNodes,
+				newAngles1.length);
+		System.arraycopy(newAngles2, 0, allAngles2, oldNumNodes,
+				newAngles2.length);
+
+		// Each node keeps its old edges first, followed by its new ones.
+		int[] newOffsets = new int[numNodes + 1];
+		for (int i = 0; i < oldNumNodes; i++) {
+			newOffsets[i + 1] = offsets[i + 1] - offsets[i];
+		}
+		for (int k = 0; k < connections.size(); k++) {
+			newOffsets[connections.get(k) + 1]++;
+		}
+		for (int i = 0; i < numNodes; i++) {
+			newOffsets[i + 1] += newOffsets[i];
+		}
+		int numEdges = newOffsets[numNodes];
+		int[] newNeighbours = new int[numEdges];
+		float[] newCosts = new float[numEdges];
+		byte[] newStatus = new byte[numEdges];
+		int[] next = new int[numNodes];
+		for (int i = 0; i < oldNumNodes; i++) {
+			int count = offsets[i + 1] - offsets[i];
+			System.arraycopy(neighbours, offsets[i], newNeighbours,
+					newOffsets[i], count);
+			System.arraycopy(costs, offsets[i], newCosts, newOffsets[i], count);
+			System.arraycopy(edgeStatus, offsets[i], newStatus,
+					newOffsets[i], count);
+			next[i] = newOffsets[i] + count;
+		}
+		for (int i = oldNumNodes; i < numNodes; i++) {
+			next[i] = newOffsets[i];
+		}
+		for (int k = 0; k < connections.size(); k += 2) {
+			int i = connections.get(k);
+			int j = connections.get(k + 1);
+			float cost = (float) StateTools.totalAngleDelta(allAngles1[i],
+					allAngles2[i], allAngles1[j], allAngles2[j]);
+			newNeighbours[next[i]] = j;
+			newCosts[next[i]] = cost;
+			newStatus[next[i]++] = status;
+			newNeighbours[next[j]] = i;
+			newCosts[next[j]] = cost;
+			newStatus[next[j]++] = status;
+		}
+
+		Roadmap roadmap = new Roadmap(maxAngleDelta, allAngles1, allAngles2,
+				newOffsets, newNeighbours, newCosts, newStatus);
+		synchronized (this) {
+			if (index != null) {
+				for (int i = 0; i < newAngles1.length; i++) {
+					index.add(newAngles1[i], newAngles2[i]);
+				}
+				roadmap.index = index;
+				index = null;
+			}
+		}
+		return roadmap;
+	}
+
+	/**
+	 * Returns the first angles of the given states, as an array.
+	 * 
+	 * @param states
+	 *            the states.
+	 * @return the first angle of each state.
+	 */
+	public static double[] getAngles1(List<RobotArmState> states) {
+		double[] angles = new double[states.size()];
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = states.get(i).getAngle1();
+		}
+		return angles;
+	}
+
+	/**
+	 * Returns the second angles of the given states, as an array.
+	 * 
+	 * @param states
+	 *            the states.
+	 * @return the second angle of each state.
+	 */
+	public static double[] getAngles2(List<RobotArmState> states) {
+		double[] angles = new double[states.size()];
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = states.get(i).getAngle2();
+		}
+		return angles;
+	}
+
+	/**
+	 * Computes the cost of every edge from the angles of its nodes.
+	 */
+	private static float[] computeCosts(double[] angles1, double[] angles2,
+			int[] offsets, int[] neighbours) {
+		float[] costs = new float[neighbours.length];
+		for (int i = 0; i < angles1.length; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				int j = neighbours[e];
+				costs[e] = (float) StateTools.totalAngleDelta(angles1[i],
+						angles2[i], angles1[j], angles2[j]);
+			}
+		}
+		return costs;
+	}
+
+	/**
+	 * Finds every node within the maximum total angle delta of the given
+	 * configuration.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @param out
+	 *            the list to append the IDs of the nodes to.
+	 */
+	public void findNeighbours(double angle1, double angle2, IntList out) {
+		getIndex().findNeighbours(angle1, angle2, maxAngleDelta, out);
+	}
+
+	/**
+	 * Returns the index over the nodes, building it if necessary.
+	 */
+	private synchronized StateIndex getIndex() {
+		if (index == null) {
+			index = new StateIndex(maxAngleDelta);
+			for (int i = 0; i < angles1.length; i++) {
+				index.add(angles1[i], angles2[i]);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the maximum total angle delta between neighbours.
+	 * 
+	 * @return the maximum total angle delta between neighbours.
+	 */
+	public double getMaxAngleDelta() {
+		return maxAngleDelta;
+	}
+
+	/**
+	 * Returns the number of nodes in the roadmap.
+	 * 
+	 * @return the number of nodes in the roadmap.
+	 */
+	public int getNumNodes() {
+		return angles1.length;
+	}
+
+	/**
+	 * Returns the number of directed edges in the roadmap; this is twice the
+	 * number of connections.
+	 * 
+	 * @return the number of directed edges in the roadmap.
+	 */
+	public int getNumEdges() {
+		return neighbours.length;
+	}
+
+	/**
+	 * Returns the first angle of the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the first angle of the given node.
+	 */
+	public double getAngle1(int node) {
+		return angles1[node];
+	}
+
+	/**
+	 * Returns the second angle of the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the second angle of the given node.
+	 */
+	public double getAngle2(int node) {
+		return angles2[node];
+	}
+
+	/**
+	 * Returns the index of the first edge leaving the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the index of the first edge leaving the given node.
+	 */
+	public int getFirstEdge(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * Returns the index one past the last edge leaving the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the index one past the last edge leaving the given node.
+	 */
+	public int getEndEdge(int node) {
+		return offsets[node + 1];
+	}
+
+	/**
+	 * Returns the node the given edge leads to.
+	 * 
+	 * @param edge
+	 *            the index of the edge.
+	 * @return the ID of the node the edge leads to.
+	 */
+	public int getNeighbour(int edge) {
+		return neighbours[edge];
+	}
+
+	/**
+	 * Returns the cost of the given edge.
+	 * 
+	 * @param edge
+	 *            the index of the edge.
+	 * @return the cost of the edge.
+	 */
+	public float getCost(int edge) {
+		return costs[edge];
+	}
+
+	/**
+	 * Returns the total angle delta between the two given nodes, whether or
+	 * not they are connected.
+	 * 
+	 * @param from
+	 *            the ID of the first node.
+	 * @param to
+	 *            the ID of the second node.
+	 * @return the total angle delta between the two nodes.
+	 */
+	public double getDistance(int from, int to) {
+		return StateTools.totalAngleDelta(angles1[from], angles2[from],
+				angles1[to], angles2[to]);
+	}
+
+	/**
+	 * Returns the status of the given edge.
+	 * 
+	 * @param edge
+	 *            the index of the edge.
+	 * @return UNCHECKED, VALID or INVALID.
+	 */
+	public byte getEdgeStatus(int edge) {
+		return edgeStatus[edge];
+	}
+
+	/**
+	 * Sets the status of the given edge, and of the matching edge in the
+	 * opposite direction.
+	 * 
+	 * This isn't synchronised, and lazy searches running in parallel call it
+	 * on a shared roadmap. That race is benign, as long as the statuses only
+	 * ever go from UNCHECKED to the outcome of checking the edge against the
+	 * same obstacles: every thread then writes the same value, byte writes
+	 * are never torn, and a thread that still sees UNCHECKED merely checks
+	 * the edge again. Anything that resets statuses, such as DynamicRoadmap,
+	 * must not run alongside such searches.
+	 * 
+	 * @param from
+	 *            the ID of the node the edge leaves.
+	 * @param edge
+	 *            the index of the edge.
+	 * @param status
+	 *            the new status.
+	 */
+	public void setEdgeStatus(int from, int edge, byte status) {
+		edgeStatus[edge] = status;
+		int to = neighbours[edge];
+		for (int e = offsets[to]; e < offsets[to + 1]; e++) {
+			if (neighbours[e] == from) {
+				edgeStatus[e] = status;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the edge from one node to another.
+	 * 
+	 * @param from
+	 *            the ID of the node the edge leaves.
+	 * @param to
+	 *            the ID of the node the edge leads to.
+	 * @return the index of the edge, or -1 if there is no such edge.
+	 */
+	public int findEdge(int from, int to) {
+		for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+			if (neighbours[e] == to) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes this roadmap to a binary file. The file holds a fixed-size header
+	 * followed by the arrays of the roadmap, in big-endian order.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @param tag
+	 *            a value identifying the roadmap, which must be given again
+	 *            to read it back.
+	 * @throws IOException
+	 *             if there is an error writing to the file.
+	 */
+	public void write(File file, long tag) throws IOException {
+		int numNodes = getNumNodes();
+		int numEdges = getNumEdges();
+		long size = FILE_HEADER_SIZE + 20L * numNodes + 4 + 9L * numEdges;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(FILE_MAGIC);
+			buffer.putInt(FILE_VERSION);
+			buffer.putLong(tag);
+			buffer.putDouble(maxAngleDelta);
+			buffer.putInt(numNodes);
+			buffer.putInt(numEdges);
+			buffer.asDoubleBuffer().put(angles1);
+			buffer.position(buffer.position() + 8 * numNodes);
+			buffer.asDoubleBuffer().put(angles2);
+			buffer.position(buffer.position() + 8 * numNodes);
+			buffer.asIntBuffer().put(offsets);
+			buffer.position(buffer.position() + 4 * (numNodes + 1));
+			buffer.asIntBuffer().put(neighbours);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.asFloatBuffer().put(costs);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.put(edgeStatus);
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a roadmap from a binary file written by write(File, long); the
+	 * file is memory-mapped and copied straight into the arrays.
+	 * 
+	 * @param file
+	 *            the file to read from.
+	 * @param tag
+	 *            the value given when the roadmap was written.
+	 * @return the roadmap.
+	 * @throws IOException
+	 *             if the file can't be read, isn't a valid roadmap file or
+	 *             has a different tag.
+	 */
+	public static Roadmap read(File file, long tag) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long size = raf.length();
+			if (size < FILE_HEADER_SIZE) {
+				throw new IOException("Roadmap file is truncated: " + file);
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt() != FILE_MAGIC
+					|| buffer.getInt() != FILE_VERSION) {
+				throw new IOException("Not a roadmap file: " + file);
+			}
+			if (buffer.getLong() != tag) {
+				throw new IOException("Roadmap file has the wrong tag: " + file);
+			}
+			double maxAngleDelta = buffer.getDouble();
+			int numNodes = buffer.getInt();
+			int numEdges = buffer.getInt();
+			if (numNodes < 0 || numEdges < 0
+					|| size != FILE_HEADER_SIZE + 20L * numNodes + 4 + 9L
+							* numEdges) {
+				throw new IOException("Roadmap file is truncated: " + file);
+			}
+			double[] angles1 = new double[numNodes];
+			double[] angles2 = new double[numNodes];
+			int[] offsets = new int[numNodes + 1];
+			int[] neighbours = new int[numEdges];
+			float[] costs = new float[numEdges];
+			byte[] edgeStatus = new byte[numEdges];
+			buffer.asDoubleBuffer().get(angles1);
+			buffer.position(buffer.position() + 8 * numNodes);
+			buffer.asDoubleBuffer().get(angles2);
+			buffer.position(buffer.position() + 8 * numNodes);
+			buffer.asIntBuffer().get(offsets);
+			buffer.position(buffer.position() + 4 * (numNodes + 1));
+			buffer.asIntBuffer().get(neighbours);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.asFloatBuffer().get(costs);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.get(edgeStatus);
+			checkEdges(offsets, neighbours, edgeStatus, file);
+			return new Roadmap(maxAngleDelta, angles1, angles2, offsets,
+					neighbours, costs, edgeStatus);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks that the given offsets start at 0, never decrease and end at
+	 * the number of edges, and that every edge has a valid neighbour and
+	 * status.
+	 * 
+	 * @throws IOException
+	 *             if any of them doesn't.
+	 */
+	private static void checkEdges(int[] offsets, int[] neighbours,
+			byte[] edgeStatus, File file) throws IOException {
+		int numNodes = offsets.length - 1;
+		if (offsets[0] != 0 || offsets[numNodes] != neighbours.length) {
+			throw new IOException("Roadmap file has invalid offsets: " + file);
+		}
+		for (int i = 0; i < numNodes; i++) {
+			if (offsets[i + 1] < offsets[i]) {
+				throw new IOException("Roadmap file has invalid offsets: "
+						+ file);
+			}
+		}
+		for (int e = 0; e < neighbours.length; e++) {
+			if (neighbours[e] < 0 || neighbours[e] >= numNodes) {
+				throw new IOException("Roadmap file has an invalid node: "
+						+ file);
+			}
+			if (edgeStatus[e] != UNCHECKED && edgeStatus[e] != VALID
+					&& edgeStatus[e] != INVALID) {
+				throw new IOException("Roadmap file has an invalid status: "
+						+ file);
+			}
+		}
+	}
+}
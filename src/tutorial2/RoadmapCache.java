@@ -0,0 +1,143 @@
+package tutorial2;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * A directory of roadmap files, keyed by the workspace and the parameters
+ * used to build each roadmap. Roadmaps don't depend on the initial and goal
+ * states, so a roadmap built for one query can be reused for any other query
+ * in the same workspace.
+ * 
+ * @author lackofcheese
+ */
+public class RoadmapCache {
+	/** The directory holding the roadmap files */
+	private File directory;
+
+	/**
+	 * Constructs a cache in the given directory, creating it if necessary.
+	 * 
+	 * @param directory
+	 *            the directory to hold the roadmap files.
+	 */
+	public RoadmapCache(File directory) {
+		this.directory = directory;
+		directory.mkdirs();
+	}
+
+	/**
+	 * Returns the key of a roadmap built for the given workspace and with the
+	 * given parameters; this is a hash of all of them.
+	 * 
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 * @param obstacles
+	 *            the obstacles.
+	 * @param numSamples
+	 *            the number of states sampled.
+	 * @param maxAngleDelta
+	 *            the maximum total angle delta between neighbours.
+	 * @param checker
+	 *            the checker used to check states and edges; its settings,
+	 *            as per StateChecker.getSettings, are part of the key.
+	 * @param lazy
+	 *            whether the edges are left unchecked.
+	 * @return the key of the roadmap.
+	 */
+	public static long computeKey(double length1, double length2,
+			List<Obstacle> obstacles, int numSamples, double maxAngleDelta,
+			StateChecker checker, boolean lazy) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			data.writeDouble(length1);
+			data.writeDouble(length2);
+			data.writeInt(obstacles.size());
+			for (Obstacle o : obstacles) {
+				Rectangle2D rect = o.getRect();
+				data.writeDouble(rect.getX());
+				data.writeDouble(rect.getY());
+				data.writeDouble(rect.getWidth());
+				data.writeDouble(rect.getHeight());
+			}
+			data.writeInt(numSamples);
+			data.writeDouble(maxAngleDelta);
+			data.writeUTF(checker.getSettings());
+			data.writeBoolean(lazy);
+			data.close();
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return ByteBuffer.wrap(digest.digest(bytes.toByteArray()))
+					.getLong();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the file holding the roadmap with the given key.
+	 * 
+	 * @param key
+	 *            the key of the roadmap.
+	 * @return the file holding the roadmap.
+	 */
+	public File getFile(long key) {
+		return new File(directory, String.format("roadmap-%016x.bin", key));
+	}
+
+	/**
+	 * Loads the roadmap with the given key, if there is one.
+	 * 
+	 * @param key
+	 *            the key of the roadmap.
+	 * @return the roadmap, or null if it isn't in the cache.
+	 * @throws IOException
+	 *             if the roadmap file exists, but can't be read.
+	 */
+	public Roadmap load(long key) throws IOException {
+		File file = getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		return Roadmap.read(file, key);
+	}
+
+	/**
+	 * Saves the given roadmap under the given key.
+	 * 
+	 * @param key
+	 *            the key of the roadmap.
+	 * @param roadmap
+	 *            the roadmap to save.
+	 * @throws IOException
+	 *             if there is an error writing the roadmap file.
+	 */
+	public void save(long key, Roadmap roadmap) throws IOException {
+		File file = getFile(key);
+		// A unique name, so that concurrent saves of the same roadmap don't
+		// write over each other's files before they are renamed.
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			roadmap.write(temp, key);
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("Couldn't create " + file);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package tutorial2;
+
+import java.util.Arrays;
+
+/**
+ * A single start/goal query against a Roadmap.
+ * 
+ * The start and goal are treated as two extra nodes, with IDs equal to
+ * getStartNode() and getGoalNode(), that are linked to the roadmap nodes
+ * within its maximum angle delta of them. The links belong to the query
+ * rather than the roadmap, so making a query doesn't modify the roadmap, and
+ * one roadmap may be shared between any number of queries. Links are only
+ * kept if their direct path is valid.
+ * 
+ * Searching a query may still modify the roadmap: RobotSolver.lazySearch
+ * records the status of each edge it checks, on the shared roadmap and
+ * without synchronisation, so lazy queries in parallel race on those
+ * statuses. See Roadmap.setEdgeStatus for why the race is benign.
+ * 
+ * @author lackofcheese
+ */
+public class RoadmapQuery {
+	/** The roadmap being queried */
+	private Roadmap roadmap;
+	/** The first angles of the start and goal */
+	private double[] angles1 = new double[2];
+	/** The second angles of the start and goal */
+	private double[] angles2 = new double[2];
+	/** The roadmap nodes linked to the start and goal, in ascending order */
+	private int[][] links = new int[2][];
+	/** The costs of the links from the start and goal */
+	private float[][] linkCosts = new float[2][];
+	/** The cost of the direct link from start to goal, or -1 if there is none */
+	private float directCost = -1;
+
+	/**
+	 * Creates a query between the given states, and links the start and goal
+	 * into the roadmap.
+	 * 
+	 * @param roadmap
+	 *            the roadmap to query.
+	 * @param checker
+	 *            the checker used to validate the links.
+	 * @param start
+	 *            the initial state.
+	 * @param goal
+	 *            the goal state.
+	 */
+	public RoadmapQuery(Roadmap roadmap, StateChecker checker,
+			RobotArmState start, RobotArmState goal) {
+		this.roadmap = roadmap;
+		angles1[0] = start.getAngle1();
+		angles2[0] = start.getAngle2();
+		angles1[1] = goal.getAngle1();
+		angles2[1] = goal.getAngle2();
+		IntList found = new IntList();
+		for (int end = 0; end < 2; end++) {
+			found.clear();
+			roadmap.findNeighbours(angles1[end], angles2[end], found);
+			IntList valid = new IntList(found.size());
+			for (int k = 0; k < found.size(); k++) {
+				int node = found.get(k);
+				// The node itself is checked too, in case the obstacles have
+				// changed since the roadmap was built.
+				if (checker.isValidState(roadmap.getAngle1(node),
+						roadmap.getAngle2(node))
+						&& checker.hasDirectPath(angles1[end], angles2[end],
+								roadmap.getAngle1(node),
+								roadmap.getAngle2(node))) {
+					valid.add(node);
+				}
+			}
+			links[end] = valid.toArray();
+			Arrays.sort(links[end]);
+			linkCosts[end] = new float[links[end].length];
+			for (int k = 0; k < links[end].length; k++) {
+				int node = links[end][k];
+				linkCosts[end][k] = (float) StateTools.totalAngleDelta(
+						angles1[end], angles2[end], roadmap.getAngle1(node),
+						roadmap.getAngle2(node));
+			}
+		}
+		double delta = StateTools.totalAngleDelta(angles1[0], angles2[0],
+				angles1[1], angles2[1]);
+		if (delta <= roadmap.getMaxAngleDelta()
+				&& checker.hasDirectPath(angles1[0], angles2[0], angles1[1],
+						angles2[1])) {
+			directCost = (float) delta;
+		}
+	}
+
+	/**
+	 * Returns the roadmap being queried.
+	 * 
+	 * @return the roadmap being queried.
+	 */
+	public Roadmap getRoadmap() {
+		return roadmap;
+	}
+
+	/**
+	 * Returns the number of nodes, including the start and goal.
+	 * 
+	 * @return the number of nodes, including the start and goal.
+	 */
+	public int getNumNodes() {
+		return roadmap.getNumNodes() + 2;
+	}
+
+	/**
+	 * Returns the ID of the start node.
+	 * 
+	 * @return the ID of the start node.
+	 */
+	public int getStartNode() {
+		return roadmap.getNumNodes();
+	}
+
+	/**
+	 * Returns the ID of the goal node.
+	 * 
+	 * @return the ID of the goal node.
+	 */
+	public int getGoalNode() {
+		return roadmap.getNumNodes() + 1;
+	}
+
+	/**
+	 * Returns the first angle of the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the first angle of the given node.
+	 */
+	public double getAngle1(int node) {
+		int n = roadmap.getNumNodes();
+		return node < n ? roadmap.getAngle1(node) : angles1[node - n];
+	}
+
+	/**
+	 * Returns the second angle of the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the second angle of the given node.
+	 */
+	public double getAngle2(int node) {
+		int n = roadmap.getNumNodes();
+		return node < n ? roadmap.getAngle2(node) : angles2[node - n];
+	}
+
+	/**
+	 * Returns the total angle delta between the two given nodes, whether or
+	 * not they are connected.
+	 * 
+	 * @param from
+	 *            the ID of the first node.
+	 * @param to
+	 *            the ID of the second node.
+	 * @return the total angle delta between the two nodes.
+	 */
+	public double getDistance(int from, int to) {
+		return StateTools.totalAngleDelta(getAngle1(from), getAngle2(from),
+				getAngle1(to), getAngle2(to));
+	}
+
+	/**
+	 * Returns the number of roadmap nodes linked to the given end.
+	 * 
+	 * @param end
+	 *            the ID of the start or goal node.
+	 * @return the number of roadmap nodes linked to it.
+	 */
+	public int getNumLinks(int end) {
+		return links[end - roadmap.getNumNodes()].length;
+	}
+
+	/**
+	 * Returns a roadmap node linked to the given end.
+	 * 
+	 * @param end
+	 *            the ID of the start or goal node.
+	 * @param k
+	 *            the index of the link, from 0 to getNumLinks(end) - 1.
+	 * @return the ID of the linked roadmap node.
+	 */
+	public int getLink(int end, int k) {
+		return links[end - roadmap.getNumNodes()][k];
+	}
+
+	/**
+	 * Returns the cost of a link from the given end.
+	 * 
+	 * @param end
+	 *            the ID of the start or goal node.
+	 * @param k
+	 *            the index of the link, from 0 to getNumLinks(end) - 1.
+	 * @return the cost of the link.
+	 */
+	public float getLinkCost(int end, int k) {
+		return linkCosts[end - roadmap.getNumNodes()][k];
+	}
+
+	/**
+	 * Returns the cost of the link between the given end and roadmap node.
+	 * 
+	 * @param end
+	 *            the ID of the start or goal node.
+	 * @param node
+	 *            the ID of a roadmap node.
+	 * @return the cost of the link, or -1 if they aren't linked.
+	 */
+	public float findLinkCost(int end, int node) {
+		int k = Arrays.binarySearch(links[end - roadmap.getNumNodes()], node);
+		return k < 0 ? -1 : getLinkCost(end, k);
+	}
+
+	/**
+	 * Returns the cost of the direct link from the start to the goal.
+	 * 
+	 * @return the cost of the direct link, or -1 if there is none.
+	 */
+	public float getDirectCost() {
+		return directCost;
+	}
+
+	/**
+	 * Returns the state of the given node.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 * @return the state of the given node.
+	 */
+	public RobotArmState getState(int node, double length1, double length2) {
+		return new RobotArmState(length1, length2, getAngle1(node),
+				getAngle2(node));
+	}
+}
@@ -0,0 +1,157 @@
+package tutorial2;
+
+import java.util.BitSet;
+
+/**
+ * A* search for a RoadmapQuery, using the total angle delta to the goal as
+ * the heuristic (as per TotalAngleDeltaHeuristic). Roadmap edges marked
+ * INVALID are ignored; UNCHECKED edges are assumed to be valid.
+ * 
+ * The frontier is an IndexedHeap, and the costs and closed set are kept in
+ * flat arrays indexed by node ID, so a search allocates nothing beyond the
+ * path it returns. A single search may be reused for any number of queries,
+ * with setQuery.
+ * 
+ * @author lackofcheese
+ */
+public class RoadmapSearch {
+	/** The query to answer */
+	private RoadmapQuery query;
+	/** The roadmap being searched */
+	private Roadmap roadmap;
+	/** The number of nodes expanded by the last search */
+	private int numExpanded;
+	/** The list to record the nodes expanded into, in order, or null */
+	private IntList expansionOrder;
+
+	/** The cost of reaching each node, and its parent */
+	private NodeCosts costs;
+	/** The nodes which have been expanded */
+	private BitSet closed;
+	/** The nodes waiting to be expanded, keyed by estimated total cost */
+	private IndexedHeap frontier;
+
+	/**
+	 * Constructs a search for the given query.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 */
+	public RoadmapSearch(RoadmapQuery query) {
+		int numNodes = query.getNumNodes();
+		costs = new NodeCosts(numNodes);
+		closed = new BitSet(numNodes);
+		frontier = new IndexedHeap(numNodes);
+		setQuery(query);
+	}
+
+	/**
+	 * Sets the query to answer, reusing the space allocated for the last one.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 */
+	public void setQuery(RoadmapQuery query) {
+		this.query = query;
+		this.roadmap = query.getRoadmap();
+		costs.ensureCapacity(query.getNumNodes());
+		frontier.ensureCapacity(query.getNumNodes());
+	}
+
+	/**
+	 * Sets a list to record the nodes expanded by each later search into, in
+	 * the order they are expanded; the list is cleared at the start of each
+	 * search.
+	 * 
+	 * @param expansionOrder
+	 *            the list to record into, or null to stop recording.
+	 */
+	public void setExpansionOrder(IntList expansionOrder) {
+		this.expansionOrder = expansionOrder;
+	}
+
+	/**
+	 * Finds the shortest path from the start of the query to its goal.
+	 * 
+	 * @return the IDs of the nodes along the path, or null if the goal can't
+	 *         be reached.
+	 */
+	public int[] findPath() {
+		int start = query.getStartNode();
+		int goal = query.getGoalNode();
+		costs.reset();
+		closed.clear();
+		frontier.clear();
+
+		numExpanded = 0;
+		if (expansionOrder != null) {
+			expansionOrder.clear();
+		}
+		costs.set(start, 0, -1);
+		frontier.push(start, estimate(start));
+		while (!frontier.isEmpty()) {
+			int node = frontier.poll();
+			closed.set(node);
+			numExpanded++;
+			if (expansionOrder != null) {
+				expansionOrder.add(node);
+			}
+			if (node == goal) {
+				return costs.buildPath(goal);
+			}
+			if (node == start) {
+				for (int k = 0; k < query.getNumLinks(start); k++) {
+					relax(node, query.getLink(start, k),
+							query.getLinkCost(start, k));
+				}
+				if (query.getDirectCost() >= 0) {
+					relax(node, goal, query.getDirectCost());
+				}
+				continue;
+			}
+			for (int e = roadmap.getFirstEdge(node); e < roadmap
+					.getEndEdge(node); e++) {
+				if (roadmap.getEdgeStatus(e) != Roadmap.INVALID) {
+					relax(node, roadmap.getNeighbour(e), roadmap.getCost(e));
+				}
+			}
+			float goalCost = query.findLinkCost(goal, node);
+			if (goalCost >= 0) {
+				relax(node, goal, goalCost);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Updates the cost of reaching the given node, if going via the given
+	 * parent is cheaper.
+	 */
+	private void relax(int parent, int node, double cost) {
+		if (closed.get(node)) {
+			return;
+		}
+		double newG = costs.getCost(parent) + cost;
+		if (newG < costs.getCost(node)) {
+			costs.set(node, newG, parent);
+			frontier.push(node, newG + estimate(node));
+		}
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last search.
+	 * 
+	 * @return the number of nodes expanded by the last search.
+	 */
+	public int getNumExpanded() {
+		return numExpanded;
+	}
+
+	/**
+	 * Returns the heuristic estimate of the cost from the given node to the
+	 * goal.
+	 */
+	private double estimate(int node) {
+		return query.getDistance(node, query.getGoalNode());
+	}
+}
@@ -0,0 +1,117 @@
+package tutorial2;
+
+/**
+ * Presents a RoadmapQuery as a graph of RobotArmStates, so that the
+ * algorithms in search.algorithms and TotalAngleDeltaHeuristic can be run on
+ * it.
+ * 
+ * States are only created when asked for; asking for the state of a node
+ * creates the states of every node connected to it, and links them together
+ * with the edges of the roadmap that aren't known to be INVALID. The rest of
+ * the roadmap stays in its compact form.
+ * 
+ * @author lackofcheese
+ */
+public class RoadmapStateAdapter {
+	/** The query being adapted */
+	private RoadmapQuery query;
+	/** The roadmap being queried */
+	private Roadmap roadmap;
+	/** The length of the first rod */
+	private double length1;
+	/** The length of the second rod */
+	private double length2;
+	/** The state of each node, or null if it hasn't been created yet */
+	private RobotArmState[] states;
+
+	/**
+	 * Constructs an adapter for the given query.
+	 * 
+	 * @param query
+	 *            the query to adapt.
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 */
+	public RoadmapStateAdapter(RoadmapQuery query, double length1,
+			double length2) {
+		this.query = query;
+		this.roadmap = query.getRoadmap();
+		this.length1 = length1;
+		this.length2 = length2;
+		this.states = new RobotArmState[query.getNumNodes()];
+	}
+
+	/**
+	 * Returns the state for the given node, with its successors populated.
+	 * 
+	 * @param node
+	 *            the ID of the node.
+	 * @return the state for the given node.
+	 */
+	public RobotArmState getState(int node) {
+		if (states[node] == null) {
+			createComponent(node);
+		}
+		return states[node];
+	}
+
+	/**
+	 * Creates the states for every node connected to the given one, and adds
+	 * the successors of each of them.
+	 */
+	private void createComponent(int node) {
+		IntList queue = new IntList();
+		queue.add(node);
+		createState(node);
+		int start = query.getStartNode();
+		int goal = query.getGoalNode();
+		for (int k = 0; k < queue.size(); k++) {
+			int current = queue.get(k);
+			if (current == start || current == goal) {
+				for (int i = 0; i < query.getNumLinks(current); i++) {
+					link(queue, current, query.getLink(current, i),
+							query.getLinkCost(current, i));
+				}
+				if (query.getDirectCost() >= 0) {
+					link(queue, current, current == start ? goal : start,
+							query.getDirectCost());
+				}
+				continue;
+			}
+			for (int e = roadmap.getFirstEdge(current); e < roadmap
+					.getEndEdge(current); e++) {
+				if (roadmap.getEdgeStatus(e) != Roadmap.INVALID) {
+					link(queue, current, roadmap.getNeighbour(e),
+							roadmap.getCost(e));
+				}
+			}
+			for (int end = start; end <= goal; end++) {
+				float cost = query.findLinkCost(end, current);
+				if (cost >= 0) {
+					link(queue, current, end, cost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the given node as a successor of the current one, creating its
+	 * state and queueing it if necessary.
+	 */
+	private void link(IntList queue, int current, int next, double cost) {
+		if (states[next] == null) {
+			createState(next);
+			queue.add(next);
+		}
+		states[current].addSuccessor(states[next], cost);
+	}
+
+	/**
+	 * Creates the state for the given node, without any successors.
+	 */
+	private void createState(int node) {
+		states[node] = query.getState(node, length1, length2);
+	}
+}
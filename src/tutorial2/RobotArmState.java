@@ -9,14 +9,29 @@ import search.StateWithMap;
 /**
  * Represents a state of the robot arm for Tutorial 2.
  * 
+ * The positions of the joint and the end of the arm are only worked out when
+ * they're first asked for, since most states (roadmap nodes, search states)
+ * never need them; they are then kept as plain doubles.
+ * 
  * @author lackofcheese
  */
 public class RobotArmState extends StateWithMap {
+	/** The x-coordinate of the base of the arm */
+	public static final double BASE_X = 0.5;
+	/** The y-coordinate of the base of the arm */
+	public static final double BASE_Y = 0.5;
+
 	private double length1;
 	private double length2;
 	private double angle1;
 	private double angle2;
-	private List<Point2D> points;
+
+	/** The position of the joint between the rods */
+	private double jointX, jointY;
+	/** The position of the end of the second rod */
+	private double endX, endY;
+	/** Whether the positions have been worked out; set after them */
+	private volatile boolean hasPositions = false;
 
 	/**
 	 * Constructor. Creates a state of the robot arm with the given parameters.
@@ -37,15 +52,58 @@ public class RobotArmState extends StateWithMap {
 		this.length2 = length2;
 		this.angle1 = angle1;
 		this.angle2 = angle2;
-		points = new ArrayList<Point2D>();
-		double x = 0.5, y = 0.5;
-		points.add(new Point2D.Double(x, y));
-		x += length1 * Math.cos(angle1);
-		y += length1 * Math.sin(angle1);
-		points.add(new Point2D.Double(x, y));
-		x += length2 * (Math.cos(angle1 + angle2));
-		y += length2 * (Math.sin(angle1 + angle2));
-		points.add(new Point2D.Double(x, y));
+	}
+
+	/**
+	 * Creates a state of the robot arm whose rod directions are already
+	 * known, as when stepping along a path in StateTools.hasDirectPath, so
+	 * that its positions can be worked out without any trigonometry.
+	 * 
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @param cos1
+	 *            the cosine of angle1.
+	 * @param sin1
+	 *            the sine of angle1.
+	 * @param cos12
+	 *            the cosine of angle1 + angle2.
+	 * @param sin12
+	 *            the sine of angle1 + angle2.
+	 */
+	RobotArmState(double length1, double length2, double angle1,
+			double angle2, double cos1, double sin1, double cos12, double sin12) {
+		this(length1, length2, angle1, angle2);
+		setPositions(cos1, sin1, cos12, sin12);
+	}
+
+	/**
+	 * Works out the positions of the joint and the end from the directions
+	 * of the rods.
+	 */
+	private void setPositions(double cos1, double sin1, double cos12,
+			double sin12) {
+		jointX = BASE_X + length1 * cos1;
+		jointY = BASE_Y + length1 * sin1;
+		endX = jointX + length2 * cos12;
+		endY = jointY + length2 * sin12;
+		hasPositions = true;
+	}
+
+	/**
+	 * Works out the positions of the joint and the end, if that hasn't been
+	 * done yet. Threads that race to do this all compute the same values.
+	 */
+	private void ensurePositions() {
+		if (!hasPositions) {
+			setPositions(Math.cos(angle1), Math.sin(angle1),
+					Math.cos(angle1 + angle2), Math.sin(angle1 + angle2));
+		}
 	}
 
 	@Override
@@ -65,8 +123,11 @@ public class RobotArmState extends StateWithMap {
 
 	@Override
 	public int hashCode() {
-		return Double.valueOf(angle1).hashCode() + 7
-				* Double.valueOf(angle2).hashCode();
+		// Same as Double.hashCode, without boxing the angles.
+		long bits1 = Double.doubleToLongBits(angle1);
+		long bits2 = Double.doubleToLongBits(angle2);
+		return (int) (bits1 ^ (bits1 >>> 32)) + 7
+				* (int) (bits2 ^ (bits2 >>> 32));
 	}
 
 	/**
@@ -106,11 +167,57 @@ public class RobotArmState extends StateWithMap {
 	}
 
 	/**
-	 * Returns the endpoints of the rods.
+	 * Returns the x-coordinate of the joint between the rods.
+	 * 
+	 * @return the x-coordinate of the joint.
+	 */
+	public double getJointX() {
+		ensurePositions();
+		return jointX;
+	}
+
+	/**
+	 * Returns the y-coordinate of the joint between the rods.
+	 * 
+	 * @return the y-coordinate of the joint.
+	 */
+	public double getJointY() {
+		ensurePositions();
+		return jointY;
+	}
+
+	/**
+	 * Returns the x-coordinate of the end of the second rod.
+	 * 
+	 * @return the x-coordinate of the end of the arm.
+	 */
+	public double getEndX() {
+		ensurePositions();
+		return endX;
+	}
+
+	/**
+	 * Returns the y-coordinate of the end of the second rod.
+	 * 
+	 * @return the y-coordinate of the end of the arm.
+	 */
+	public double getEndY() {
+		ensurePositions();
+		return endY;
+	}
+
+	/**
+	 * Returns the endpoints of the rods: the base, the joint and the end of
+	 * the arm. Prefer the coordinate accessors, which allocate nothing.
 	 * 
-	 * @return the endpoints of the rods.
+	 * @return a new list of the endpoints of the rods.
 	 */
 	public List<Point2D> getPoints() {
-		return new ArrayList<Point2D>(points);
+		ensurePositions();
+		List<Point2D> points = new ArrayList<Point2D>(3);
+		points.add(new Point2D.Double(BASE_X, BASE_Y));
+		points.add(new Point2D.Double(jointX, jointY));
+		points.add(new Point2D.Double(endX, endY));
+		return points;
 	}
 }
\ No newline at end of file
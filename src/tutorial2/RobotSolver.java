@@ -1,10 +1,18 @@
 package tutorial2;
 
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import search.State;
 import search.algorithms.*;
@@ -15,59 +23,365 @@ public class RobotSolver {
 	public static final String DEFAULT_INPUT = "problem.txt";
 	/** The default file to write the solution to. */
 	public static final String DEFAULT_OUTPUT = "solution.txt";
+	/** The default number of states to sample. */
+	public static final int DEFAULT_NUM_SAMPLES = 10000;
+	/** The default maximum total angle delta between neighbours. */
+	public static final double DEFAULT_MAX_ANGLE_DELTA = 10;
 
 	/** Holds the problem details */
 	private static ProblemSpec ps;
 
+	/** Checks states and paths against the obstacles */
+	private static StateChecker checker;
+
 	/** The list of states in the sampled state space. */
 	private static List<RobotArmState> states = new ArrayList<RobotArmState>();
 
+	/** The roadmap built by connectStates. */
+	private static Roadmap roadmap;
+
+	/** The number of states sampled in the first round of anytime search. */
+	public static final int ANYTIME_INITIAL_SAMPLES = 500;
+	/** The fewest states worth adding in a round of anytime search. */
+	private static final int ANYTIME_MIN_SAMPLES = 100;
+
+	/** The default time allowed for shortcutting a path, in milliseconds. */
+	public static final long DEFAULT_SHORTCUT_BUDGET = 200;
+
+	/** The number of times the roadmap is grown if no path is found. */
+	public static final int MAX_GROWTH_ROUNDS = 3;
+
+	/** The number of samples drawn by each sampling task. */
+	private static final int SAMPLE_CHUNK_SIZE = 1024;
+	/** The number of states connected by each connection task. */
+	private static final int CONNECT_CHUNK_SIZE = 256;
+
+	/** Whether roadmap queries are answered by bidirectional search. */
+	private static boolean bidirectional = false;
+	/** Whether solutions are written in binary, as per SolutionWriter. */
+	private static boolean binaryOutput = false;
+	/** The search used by each thread, reused between queries. */
+	private static final ThreadLocal<RoadmapSearch> searches = new ThreadLocal<RoadmapSearch>();
+	/** The bidirectional search used by each thread, reused between queries. */
+	private static final ThreadLocal<BidirectionalRoadmapSearch> bidirectionalSearches = new ThreadLocal<BidirectionalRoadmapSearch>();
+
+	/** The number of worker threads used to build the roadmap. */
+	private static int numThreads = Runtime.getRuntime().availableProcessors();
+	/** The worker pool used to build the roadmap; created on first use. */
+	private static ExecutorService executor;
+
+	/**
+	 * Sets the problem to be solved, discarding any states and roadmap built
+	 * for the previous problem.
+	 * 
+	 * @param problem
+	 *            the problem to solve; it must already be loaded.
+	 */
+	public static void setProblem(ProblemSpec problem) {
+		ps = problem;
+		checker = new CollisionChecker(problem);
+		states.clear();
+		roadmap = null;
+	}
+
+	/**
+	 * Returns the checker for the current problem.
+	 * 
+	 * @return the checker for the current problem.
+	 */
+	public static StateChecker getChecker() {
+		return checker;
+	}
+
+	/**
+	 * Replaces the checker for the current problem, which is a
+	 * CollisionChecker by default. This must be called before the roadmap is
+	 * built to have any effect on it.
+	 * 
+	 * @param checker
+	 *            the checker to use.
+	 */
+	public static void setChecker(StateChecker checker) {
+		RobotSolver.checker = checker;
+	}
+
+	/**
+	 * Returns the roadmap most recently built by connectStates or
+	 * buildRoadmap.
+	 * 
+	 * @return the current roadmap, or null if there isn't one.
+	 */
+	public static Roadmap getRoadmap() {
+		return roadmap;
+	}
+
+	/**
+	 * Sets whether roadmap queries are answered by bidirectional search
+	 * (BidirectionalRoadmapSearch) rather than by RoadmapSearch.
+	 * 
+	 * @param bidirectional
+	 *            whether to use bidirectional search.
+	 */
+	public static void setBidirectional(boolean bidirectional) {
+		RobotSolver.bidirectional = bidirectional;
+	}
+
+	/**
+	 * Sets whether solutions are written in the binary format of
+	 * SolutionWriter, rather than as text.
+	 * 
+	 * @param binaryOutput
+	 *            whether to write solutions in binary.
+	 */
+	public static void setBinaryOutput(boolean binaryOutput) {
+		RobotSolver.binaryOutput = binaryOutput;
+	}
+
+	/**
+	 * Finds the shortest path for the given query over the roadmap, treating
+	 * UNCHECKED edges as valid. Each thread keeps its search between calls,
+	 * so repeated queries don't allocate anything beyond the paths returned.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 * @return the IDs of the nodes along the path, or null if there is none.
+	 */
+	public static int[] findPath(RoadmapQuery query) {
+		if (bidirectional) {
+			BidirectionalRoadmapSearch search = bidirectionalSearches.get();
+			if (search == null) {
+				search = new BidirectionalRoadmapSearch(query);
+				bidirectionalSearches.set(search);
+			} else {
+				search.setQuery(query);
+			}
+			return search.findPath();
+		}
+		RoadmapSearch search = searches.get();
+		if (search == null) {
+			search = new RoadmapSearch(query);
+			searches.set(search);
+		} else {
+			search.setQuery(query);
+		}
+		return search.findPath();
+	}
+
+	/**
+	 * Sets the number of worker threads used to build the roadmap. This must
+	 * be called before the roadmap is first built to have any effect.
+	 * 
+	 * @param numThreads
+	 *            the number of worker threads.
+	 */
+	public static void setNumThreads(int numThreads) {
+		RobotSolver.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Returns the worker pool, creating it if necessary. The workers are
+	 * daemon threads, so they don't need to be shut down explicitly.
+	 * 
+	 * @return the worker pool.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(numThreads,
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "roadmap-worker");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return executor;
+	}
+
+	/**
+	 * Runs the given tasks on the worker pool, and returns their results in
+	 * the same order as the tasks.
+	 * 
+	 * @param tasks
+	 *            the tasks to run.
+	 * @return the results of the tasks.
+	 */
+	private static <T> List<T> runAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> future : getExecutor().invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Roadmap worker failed",
+					e.getCause());
+		}
+		return results;
+	}
+
 	/**
-	 * Randomly generates the required number of states.
+	 * Randomly generates the required number of states, and adds them to the
+	 * sampled states.
 	 * 
 	 * @param numberToGenerate
 	 *            the number of states to generate.
 	 */
 	public static void generateStates(int numberToGenerate) {
-		for (int i = 0; i < numberToGenerate; i++) {
-			while (true) {
-				RobotArmState s = StateTools.createRandomState(ps.getLength1(),
-						ps.getLength2());
-				if (StateTools.isValidState(s, ps.getObstacles())) {
-					states.add(s);
-					break;
+		states.addAll(sampleStates(numberToGenerate));
+	}
+
+	/**
+	 * Randomly generates the required number of valid states.
+	 * 
+	 * The samples are drawn in fixed-size chunks, each with its own RNG seeded
+	 * from the shared one, so the states generated for a given seed don't
+	 * depend on the number of threads. The chunk seeds are mixed, as the
+	 * streams of nearby seeds would otherwise start out correlated.
+	 * 
+	 * @param numberToGenerate
+	 *            the number of states to generate.
+	 * @return the states.
+	 */
+	private static List<RobotArmState> sampleStates(int numberToGenerate) {
+		final double length1 = ps.getLength1();
+		final double length2 = ps.getLength2();
+		long baseSeed = StateTools.nextSeed();
+		List<Callable<List<RobotArmState>>> tasks = new ArrayList<Callable<List<RobotArmState>>>();
+		for (int start = 0; start < numberToGenerate; start += SAMPLE_CHUNK_SIZE) {
+			final int count = Math.min(SAMPLE_CHUNK_SIZE, numberToGenerate
+					- start);
+			final Random random = new Random(StateTools.mixSeed(baseSeed
+					+ start));
+			tasks.add(new Callable<List<RobotArmState>>() {
+				@Override
+				public List<RobotArmState> call() {
+					List<RobotArmState> chunk = new ArrayList<RobotArmState>(
+							count);
+					while (chunk.size() < count) {
+						RobotArmState s = StateTools.createRandomState(random,
+								length1, length2);
+						if (checker.isValidState(s)) {
+							chunk.add(s);
+						}
+					}
+					return chunk;
 				}
-			}
+			});
+		}
+		List<RobotArmState> sampled = new ArrayList<RobotArmState>(
+				numberToGenerate);
+		for (List<RobotArmState> chunk : runAll(tasks)) {
+			sampled.addAll(chunk);
 		}
+		return sampled;
 	}
 
 	/**
 	 * Connects together states that have a valid path between them, and an
-	 * angle delta lower than the given maximum.
+	 * angle delta lower than the given maximum, to form the roadmap; node i
+	 * of the roadmap is states.get(i). The initial and goal states aren't
+	 * part of the roadmap; they are linked in by a RoadmapQuery.
+	 * 
+	 * The candidate edges are checked in parallel, with each task collecting
+	 * its valid edges locally; the edges are then gathered into the roadmap
+	 * in a single pass once every task has finished.
 	 * 
 	 * @param maxAngleDelta
 	 *            the maximum allowable delta between neighbours.
 	 */
-	public static void connectStates(double maxAngleDelta) {
-		for (int i = 0; i < states.size(); i++) {
-			RobotArmState s1 = states.get(i);
-			for (int j = i + 1; j < states.size(); j++) {
-				RobotArmState s2 = states.get(j);
-				double totalAngleDelta = StateTools.totalAngleDelta(s1, s2);
-				if (totalAngleDelta > maxAngleDelta) {
-					continue;
-				}
-				if (!StateTools.hasDirectPath(s1, s2, ps.getObstacles())) {
-					continue;
+	public static void connectStates(final double maxAngleDelta) {
+		final StateIndex index = new StateIndex(maxAngleDelta);
+		for (RobotArmState s : states) {
+			index.add(s);
+		}
+		List<Callable<IntList>> tasks = new ArrayList<Callable<IntList>>();
+		for (int start = 0; start < states.size(); start += CONNECT_CHUNK_SIZE) {
+			final int first = start;
+			final int last = Math.min(states.size(), start
+					+ CONNECT_CHUNK_SIZE);
+			tasks.add(new Callable<IntList>() {
+				@Override
+				public IntList call() {
+					IntList edges = new IntList();
+					IntList neighbours = new IntList();
+					for (int i = first; i < last; i++) {
+						RobotArmState s1 = states.get(i);
+						neighbours.clear();
+						index.findNeighbours(s1, maxAngleDelta, neighbours);
+						for (int k = 0; k < neighbours.size(); k++) {
+							int j = neighbours.get(k);
+							if (j > i && checker.hasDirectPath(s1, states.get(j))) {
+								edges.add(i);
+								edges.add(j);
+							}
+						}
+					}
+					return edges;
 				}
-				s1.addSuccessor(s2, totalAngleDelta);
-				s2.addSuccessor(s1, totalAngleDelta);
+			});
+		}
+		IntList connections = new IntList();
+		for (IntList edges : runAll(tasks)) {
+			for (int k = 0; k < edges.size(); k++) {
+				connections.add(edges.get(k));
 			}
 		}
+		roadmap = Roadmap.build(maxAngleDelta, Roadmap.getAngles1(states),
+				Roadmap.getAngles2(states), connections);
+	}
+
+	/**
+	 * Shortens the given path by removing the waypoints it doesn't need, as
+	 * per PathShortcutter, on the worker pool, and prints the outcome.
+	 * 
+	 * @param path
+	 *            the path to shorten.
+	 * @param budgetMillis
+	 *            the time allowed, in milliseconds; if this is 0, the path
+	 *            is returned as it is.
+	 * @return the shortened path.
+	 */
+	public static List<RobotArmState> shortcutPath(List<RobotArmState> path,
+			long budgetMillis) {
+		if (budgetMillis <= 0) {
+			return path;
+		}
+		long start = System.nanoTime();
+		PathShortcutter shortcutter = new PathShortcutter(checker,
+				getExecutor());
+		List<RobotArmState> shortened = shortcutter.shortcut(path,
+				budgetMillis);
+		System.out.println(String.format(
+				"Shortcutting took %.1f ms; %d of %d waypoints kept, "
+						+ "cost %.1f down to %.1f, %d checks made.",
+				(System.nanoTime() - start) / 1e6, shortened.size(),
+				path.size(), getPathCost(path), getPathCost(shortened),
+				shortcutter.getNumChecked()));
+		return shortened;
+	}
+
+	/**
+	 * Returns the total angle delta along the given path.
+	 * 
+	 * @param path
+	 *            the path.
+	 * @return the cost of the path, in degrees.
+	 */
+	public static double getPathCost(List<RobotArmState> path) {
+		double cost = 0;
+		for (int i = 0; i < path.size() - 1; i++) {
+			cost += StateTools.totalAngleDelta(path.get(i), path.get(i + 1));
+		}
+		return cost;
 	}
 
 	/**
-	 * Writes the given solution path to a text file.
+	 * Writes the given solution path to a file, as text unless binary output
+	 * has been enabled with setBinaryOutput.
 	 * 
 	 * @param path
 	 *            the path taken from the initial state to the goal state.
@@ -78,76 +392,701 @@ public class RobotSolver {
 	 */
 	public static void writeOutput(List<RobotArmState> path, String outputPath)
 			throws IOException {
-		FileWriter writer = new FileWriter(outputPath);
-		for (RobotArmState s : path) {
-			writer.write(String.format("%.3f %.3f%s",
-					Math.toDegrees(s.getAngle1()),
-					Math.toDegrees(s.getAngle2()),
-					System.getProperty("line.separator")));
+		SolutionWriter writer = new SolutionWriter(new FileOutputStream(
+				outputPath), binaryOutput, false);
+		try {
+			writer.writePath(path);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the given solution path to a file, replacing any existing file
+	 * only once the path has been written in full; anyone reading the file
+	 * will see either the old path or the new one.
+	 * 
+	 * @param path
+	 *            the path taken from the initial state to the goal state.
+	 * @param outputPath
+	 *            the file to write to.
+	 * @throws IOException
+	 *             if there is an error writing the file.
+	 */
+	public static void publishOutput(List<RobotArmState> path,
+			String outputPath) throws IOException {
+		File file = new File(outputPath);
+		File temp = new File(outputPath + ".tmp");
+		writeOutput(path, temp.getPath());
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Couldn't create " + file);
+			}
 		}
-		writer.close();
+	}
+
+	/**
+	 * Writes a trace of the initial-to-goal query over the current roadmap to
+	 * a file, as per SearchTrace. The query is searched again with
+	 * RoadmapSearch, or BidirectionalRoadmapSearch if that is enabled,
+	 * recording the order in which the nodes are expanded. That repeats the
+	 * search made by findPath, or the last round of lazySearch, over the
+	 * roadmap as it stands. In the default mode, though, solveQuery searches
+	 * with AStarSearch from the search library instead, which breaks ties
+	 * differently; its expansions, and its path where several are equally
+	 * short, may not match the trace.
+	 * 
+	 * @param tracePath
+	 *            the file to write to.
+	 * @throws IOException
+	 *             if there is an error writing the file.
+	 */
+	public static void writeTrace(String tracePath) throws IOException {
+		RoadmapQuery query = new RoadmapQuery(roadmap, checker,
+				ps.getInitialState(), ps.getGoalState());
+		IntList expanded = new IntList();
+		int[] ids;
+		if (bidirectional) {
+			BidirectionalRoadmapSearch search = new BidirectionalRoadmapSearch(
+					query);
+			search.setExpansionOrder(expanded);
+			ids = search.findPath();
+		} else {
+			RoadmapSearch search = new RoadmapSearch(query);
+			search.setExpansionOrder(expanded);
+			ids = search.findPath();
+		}
+		SearchTrace trace = SearchTrace.record(query, expanded.toArray(), ids);
+		trace.write(new File(tracePath));
+		System.out.println(String.format(
+				"Trace of %d nodes, %d edges and %d expansions written to %s.",
+				trace.getNumNodes(), trace.getNumEdges(),
+				trace.getNumExpanded(), tracePath));
+	}
+
+	/**
+	 * Builds a roadmap over freshly sampled states, or loads it from the
+	 * cache if the same roadmap has been built before for this workspace.
+	 * 
+	 * @param cache
+	 *            the cache to use, or null to always build the roadmap.
+	 * @param lazy
+	 *            whether to leave the edges unchecked, for lazySearch.
+	 * @return the roadmap.
+	 */
+	public static Roadmap buildRoadmap(RoadmapCache cache, boolean lazy) {
+		long key = RoadmapCache.computeKey(ps.getLength1(), ps.getLength2(),
+				ps.getObstacles(), DEFAULT_NUM_SAMPLES,
+				DEFAULT_MAX_ANGLE_DELTA, checker, lazy);
+		if (cache != null) {
+			try {
+				Roadmap cached = cache.load(key);
+				if (cached != null) {
+					System.out.println("Loaded roadmap from "
+							+ cache.getFile(key));
+					roadmap = cached;
+					return roadmap;
+				}
+			} catch (IOException e) {
+				System.err.println("Ignoring cached roadmap: "
+						+ e.getMessage());
+			}
+		}
+
+		System.out.println("Generating states!");
+		generateStates(DEFAULT_NUM_SAMPLES);
+		if (lazy) {
+			System.out.println("Building lazy roadmap!");
+			roadmap = Roadmap.buildUnchecked(states, DEFAULT_MAX_ANGLE_DELTA);
+		} else {
+			System.out.println("Connecting graph!");
+			connectStates(DEFAULT_MAX_ANGLE_DELTA);
+		}
+		if (cache != null) {
+			try {
+				cache.save(key, roadmap);
+				System.out.println("Saved roadmap to " + cache.getFile(key));
+			} catch (IOException e) {
+				System.err.println("Couldn't cache roadmap: " + e.getMessage());
+			}
+		}
+		return roadmap;
+	}
+
+	/**
+	 * Adds the given number of newly sampled states to the current roadmap,
+	 * or builds a new roadmap from them if there isn't one yet. Only the new
+	 * states are connected: their neighbours amongst the old states are
+	 * looked up in the roadmap's neighbour index, and their neighbours
+	 * amongst each other in an index of just the new states, so no pair of
+	 * old states is looked at again. The new states are also added to the
+	 * sampled states, if those match the roadmap.
+	 * 
+	 * @param numberToAdd
+	 *            the number of states to add.
+	 * @param lazy
+	 *            whether to leave the new edges unchecked, for lazySearch.
+	 * @return the grown roadmap.
+	 */
+	public static Roadmap growRoadmap(int numberToAdd, final boolean lazy) {
+		final double maxAngleDelta = roadmap != null ? roadmap
+				.getMaxAngleDelta() : DEFAULT_MAX_ANGLE_DELTA;
+		final Roadmap old = roadmap != null ? roadmap : new Roadmap(
+				maxAngleDelta, new double[0], new double[0], new int[1],
+				new int[0], new float[0], new byte[0]);
+		final int numOld = old.getNumNodes();
+		List<RobotArmState> added = sampleStates(numberToAdd);
+		if (states.size() == numOld) {
+			states.addAll(added);
+		}
+		final double[] angles1 = Roadmap.getAngles1(added);
+		final double[] angles2 = Roadmap.getAngles2(added);
+		final StateIndex index = new StateIndex(maxAngleDelta);
+		for (int i = 0; i < angles1.length; i++) {
+			index.add(angles1[i], angles2[i]);
+		}
+
+		List<Callable<IntList>> tasks = new ArrayList<Callable<IntList>>();
+		for (int start = 0; start < angles1.length; start += CONNECT_CHUNK_SIZE) {
+			final int first = start;
+			final int last = Math.min(angles1.length, start
+					+ CONNECT_CHUNK_SIZE);
+			tasks.add(new Callable<IntList>() {
+				@Override
+				public IntList call() {
+					IntList edges = new IntList();
+					IntList neighbours = new IntList();
+					for (int i = first; i < last; i++) {
+						double a1 = angles1[i];
+						double a2 = angles2[i];
+						neighbours.clear();
+						old.findNeighbours(a1, a2, neighbours);
+						for (int k = 0; k < neighbours.size(); k++) {
+							int j = neighbours.get(k);
+							if (lazy
+									|| checker.hasDirectPath(a1, a2,
+											old.getAngle1(j), old.getAngle2(j))) {
+								edges.add(numOld + i);
+								edges.add(j);
+							}
+						}
+						neighbours.clear();
+						index.findNeighbours(a1, a2, maxAngleDelta, neighbours);
+						for (int k = 0; k < neighbours.size(); k++) {
+							int j = neighbours.get(k);
+							if (j > i
+									&& (lazy || checker.hasDirectPath(a1, a2,
+											angles1[j], angles2[j]))) {
+								edges.add(numOld + i);
+								edges.add(numOld + j);
+							}
+						}
+					}
+					return edges;
+				}
+			});
+		}
+		IntList connections = new IntList();
+		for (IntList edges : runAll(tasks)) {
+			for (int k = 0; k < edges.size(); k++) {
+				connections.add(edges.get(k));
+			}
+		}
+		roadmap = old.extend(angles1, angles2, connections,
+				lazy ? Roadmap.UNCHECKED : Roadmap.VALID);
+		return roadmap;
+	}
+
+	/**
+	 * Solves the current problem within the given time, in rounds: each round
+	 * grows the roadmap with more states and searches it again, and every
+	 * path shorter than the best so far is passed to the listener as soon as
+	 * it is found. Each round roughly doubles the number of states, but
+	 * rounds are cut short, or not started, if the time taken by the last
+	 * round suggests that they wouldn't finish before the deadline. The first
+	 * round always runs in full.
+	 * 
+	 * @param budgetMillis
+	 *            the time allowed, in milliseconds.
+	 * @param listener
+	 *            the listener for improved paths, or null.
+	 * @return the shortest path found, or null if none was found in time.
+	 */
+	public static List<RobotArmState> solveAnytime(long budgetMillis,
+			PathListener listener) {
+		long deadline = System.nanoTime() + budgetMillis * 1000000;
+		states.clear();
+		roadmap = null;
+		List<RobotArmState> bestPath = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+		int numToAdd = ANYTIME_INITIAL_SAMPLES;
+		while (true) {
+			long roundStart = System.nanoTime();
+			growRoadmap(numToAdd, false);
+			int numStates = roadmap.getNumNodes();
+			RoadmapQuery query = new RoadmapQuery(roadmap, checker,
+					ps.getInitialState(), ps.getGoalState());
+			int[] ids = findPath(query);
+			if (ids != null) {
+				double cost = 0;
+				for (int i = 0; i < ids.length - 1; i++) {
+					cost += query.getDistance(ids[i], ids[i + 1]);
+				}
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestPath = getPathStates(query, ids);
+					if (listener != null) {
+						listener.pathImproved(bestPath, cost, numStates);
+					}
+				}
+			}
+
+			// Each round connects only the states it adds, but each of them
+			// has more neighbours as the roadmap grows denser, so the time
+			// taken is roughly proportional to the number of states added
+			// times the number of states in total.
+			long now = System.nanoTime();
+			double scale = (double) (now - roundStart) / numToAdd / numStates;
+			// Leave a margin, since the estimate is rough.
+			double budget = 0.5 * (deadline - now) / scale;
+			long affordable = (long) ((Math.sqrt((double) numStates
+					* numStates + 4 * budget) - numStates) / 2);
+			numToAdd = (int) Math.min(numStates, affordable);
+			if (numToAdd < ANYTIME_MIN_SAMPLES) {
+				return bestPath;
+			}
+		}
+	}
+
+	/**
+	 * Answers a query on an unchecked roadmap, in the manner of Lazy PRM: the
+	 * shortest path is found assuming that every edge is valid, and then only
+	 * the edges on that path are checked. If any of them are blocked, they
+	 * are marked as INVALID and the search is re-run.
+	 * 
+	 * The edge statuses are recorded on the roadmap itself, so the roadmap
+	 * may be shared with lazy searches on other threads, as in solveBatch,
+	 * without any locking; see Roadmap.setEdgeStatus for why that race is
+	 * benign. Each search still finds a shortest valid path, but which of
+	 * several equally short paths it finds may depend on the timing.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 * @return the IDs of the nodes along a valid path, or null if there is
+	 *         none in the roadmap.
+	 */
+	public static int[] lazySearch(RoadmapQuery query) {
+		Roadmap roadmap = query.getRoadmap();
+		while (true) {
+			int[] path = findPath(query);
+			if (path == null) {
+				return null;
+			}
+			boolean valid = true;
+			for (int i = 0; i < path.length - 1 && valid; i++) {
+				// Links to the start and goal are checked by the query.
+				if (path[i] >= roadmap.getNumNodes()
+						|| path[i + 1] >= roadmap.getNumNodes()) {
+					continue;
+				}
+				int edge = roadmap.findEdge(path[i], path[i + 1]);
+				if (roadmap.getEdgeStatus(edge) != Roadmap.UNCHECKED) {
+					continue;
+				}
+				valid = checker.hasDirectPath(roadmap.getAngle1(path[i]),
+						roadmap.getAngle2(path[i]),
+						roadmap.getAngle1(path[i + 1]),
+						roadmap.getAngle2(path[i + 1]));
+				roadmap.setEdgeStatus(path[i], edge, valid ? Roadmap.VALID
+						: Roadmap.INVALID);
+			}
+			if (valid) {
+				return path;
+			}
+		}
+	}
+
+	/**
+	 * Returns the states along the given path of a query.
+	 * 
+	 * @param query
+	 *            the query the path answers.
+	 * @param ids
+	 *            the IDs of the nodes along the path.
+	 * @return the states along the path.
+	 */
+	public static List<RobotArmState> getPathStates(RoadmapQuery query,
+			int[] ids) {
+		List<RobotArmState> path = new ArrayList<RobotArmState>();
+		for (int id : ids) {
+			path.add(query.getState(id, ps.getLength1(), ps.getLength2()));
+		}
+		return path;
+	}
+
+	/**
+	 * Answers every query in the given file against one roadmap, running the
+	 * queries in parallel on the worker pool. The answers are written to one
+	 * output file, in the same order as the queries: each answer is a line
+	 * "query &lt;number&gt; &lt;length&gt;", followed by the states of the
+	 * path in the usual format, one per line (none if it wasn't solved). In
+	 * binary, the file is a batch file, as per SolutionWriter.
+	 * 
+	 * @param roadmap
+	 *            the roadmap to query.
+	 * @param queriesPath
+	 *            the file to read the queries from, as per
+	 *            ProblemSpec.loadQueries.
+	 * @param outputPath
+	 *            the file to write the answers to.
+	 * @param lazy
+	 *            whether the roadmap is unchecked, and should be searched
+	 *            with lazySearch; the queries then share the edge statuses
+	 *            they find, as per lazySearch.
+	 * @throws IOException
+	 *             if there is an error reading or writing the files.
+	 */
+	public static void solveBatch(final Roadmap roadmap, String queriesPath,
+			String outputPath, final boolean lazy) throws IOException {
+		List<RobotArmState[]> queries = ps.loadQueries(queriesPath);
+		List<Future<List<RobotArmState>>> answers = new ArrayList<Future<List<RobotArmState>>>();
+		final long[] latencies = new long[queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			final int queryNo = i;
+			final RobotArmState[] states = queries.get(i);
+			answers.add(getExecutor().submit(
+					new Callable<List<RobotArmState>>() {
+						@Override
+						public List<RobotArmState> call() {
+							long start = System.nanoTime();
+							RoadmapQuery query = new RoadmapQuery(roadmap,
+									checker, states[0], states[1]);
+							int[] ids = lazy ? lazySearch(query)
+									: findPath(query);
+							latencies[queryNo] = System.nanoTime() - start;
+							if (ids == null) {
+								return new ArrayList<RobotArmState>();
+							}
+							return getPathStates(query, ids);
+						}
+					}));
+		}
+
+		int numSolved = 0;
+		SolutionWriter writer = new SolutionWriter(new FileOutputStream(
+				outputPath), binaryOutput, true);
+		try {
+			for (int i = 0; i < answers.size(); i++) {
+				List<RobotArmState> path = answers.get(i).get();
+				if (!path.isEmpty()) {
+					numSolved++;
+				}
+				writer.startPath(i + 1, path.size());
+				writer.writePath(path);
+				answers.set(i, null);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while solving queries", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Query failed", e.getCause());
+		} finally {
+			writer.close();
+		}
+
+		System.out.println(String.format("Solved %d of %d queries.",
+				numSolved, queries.size()));
+		if (queries.isEmpty()) {
+			return;
+		}
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		System.out.println(String.format(
+				"Query latency (ms): mean %.3f, median %.3f, "
+						+ "95th percentile %.3f, max %.3f",
+				total / 1e6 / latencies.length,
+				latencies[latencies.length / 2] / 1e6,
+				latencies[(int) (latencies.length * 0.95)] / 1e6,
+				latencies[latencies.length - 1] / 1e6));
+	}
+
+	/**
+	 * Answers a single query over the roadmap, printing the outcome; this
+	 * uses lazySearch or findPath if lazy or bidirectional search is enabled,
+	 * and otherwise runs AStarSearch over a RoadmapStateAdapter.
+	 * 
+	 * @param query
+	 *            the query to answer.
+	 * @param lazy
+	 *            whether the roadmap was built for lazySearch.
+	 * @return the states along the path found, or null if there is none.
+	 */
+	private static List<RobotArmState> solveQuery(RoadmapQuery query,
+			boolean lazy) {
+		List<RobotArmState> path = null;
+		if (lazy || bidirectional) {
+			System.out.println("Searching!");
+			System.out.println();
+			int[] ids = lazy ? lazySearch(query) : findPath(query);
+			if (ids != null) {
+				path = getPathStates(query, ids);
+				System.out.println("Path found, length " + ids.length);
+			} else {
+				System.out.println("No path found.");
+			}
+		} else {
+			RoadmapStateAdapter adapter = new RoadmapStateAdapter(query,
+					ps.getLength1(), ps.getLength2());
+			RobotArmState initialState = adapter.getState(query
+					.getStartNode());
+			RobotArmState goalState = adapter.getState(query.getGoalNode());
+
+			Heuristic heuristic;
+			heuristic = new TotalAngleDeltaHeuristic(goalState);
+			// heuristic = new ZeroHeuristic();
+
+			AbstractSearchAlgorithm algo;
+			// algo = new DepthFirstSearch(initialState, goalState);
+			// algo = new DepthLimitedSearch(10, initialState, goalState);
+			// algo = new IterativeDeepeningSearch(initialState, goalState);
+
+			// algo = new BreadthFirstSearch(initialState, goalState);
+			algo = new AStarSearch(initialState, goalState, heuristic);
+
+			System.out.println("Searching!");
+			System.out.println();
+
+			algo.verboseSearch();
+			if (algo.goalFound()) {
+				path = new ArrayList<RobotArmState>();
+				for (State s : algo.getGoalPath()) {
+					path.add((RobotArmState) s);
+				}
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Prints the command-line usage of the solver.
+	 */
+	private static void printUsage() {
+		System.err.println("Usage: RobotSolver [--lazy] [--bidirectional] "
+				+ "[--clearance] "
+				+ "[--resolution=<degrees>] [--cspace=<degrees>] "
+				+ "[--grid[=<degrees>]] [--budget=<ms>] [--shortcut=<ms>] "
+				+ "[--binary] [--cache=<directory>] [--trace=<trace-file>] "
+				+ "[--batch=<queries-file>] [input-file] [output-file] [seed]");
 	}
 
 	/**
 	 * Runs the solver
 	 * 
 	 * @param args
-	 *            if given, the input and output files to use.
+	 *            if given, the input and output files to use, and the seed
+	 *            for the RNG; these may be preceded by options, as per
+	 *            printUsage.
 	 */
 	public static void main(String args[]) {
-		long seed = (new Random()).nextLong();
-		System.out.println("Seed: " + seed);
-		StateTools.setSeed(seed);
-
 		String inputPath = DEFAULT_INPUT;
 		String outputPath = DEFAULT_OUTPUT;
-		if (args.length >= 1) {
-			inputPath = args[0];
+		long seed = (new Random()).nextLong();
+		boolean lazy = false;
+		boolean useClearance = false;
+		double resolution = CollisionChecker.DEFAULT_RESOLUTION;
+		double cspaceResolution = 0;
+		double gridStep = 0;
+		long budget = 0;
+		long shortcutBudget = DEFAULT_SHORTCUT_BUDGET;
+		RoadmapCache cache = null;
+		String queriesPath = null;
+		String tracePath = null;
+		List<String> positional = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("--lazy")) {
+				lazy = true;
+			} else if (arg.equals("--clearance")) {
+				useClearance = true;
+			} else if (arg.equals("--binary")) {
+				setBinaryOutput(true);
+			} else if (arg.equals("--bidirectional")) {
+				setBidirectional(true);
+			} else if (arg.startsWith("--resolution=")) {
+				resolution = Double.parseDouble(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.startsWith("--cspace=")) {
+				cspaceResolution = Double.parseDouble(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.equals("--grid")) {
+				gridStep = GridPlanner.DEFAULT_STEP;
+			} else if (arg.startsWith("--grid=")) {
+				gridStep = Double.parseDouble(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.startsWith("--budget=")) {
+				budget = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+			} else if (arg.startsWith("--shortcut=")) {
+				shortcutBudget = Long.parseLong(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.startsWith("--cache=")) {
+				cache = new RoadmapCache(new File(arg.substring(arg
+						.indexOf('=') + 1)));
+			} else if (arg.startsWith("--batch=")) {
+				queriesPath = arg.substring(arg.indexOf('=') + 1);
+			} else if (arg.startsWith("--trace=")) {
+				tracePath = arg.substring(arg.indexOf('=') + 1);
+			} else if (arg.startsWith("--")) {
+				printUsage();
+				return;
+			} else {
+				positional.add(arg);
+			}
+		}
+		if (positional.size() >= 1) {
+			inputPath = positional.get(0);
+		}
+		if (positional.size() >= 2) {
+			outputPath = positional.get(1);
 		}
-		if (args.length >= 2) {
-			outputPath = args[1];
+		if (positional.size() >= 3) {
+			seed = Long.parseLong(positional.get(2));
 		}
-		ps = new ProblemSpec();
+		System.out.println("Seed: " + seed);
+		StateTools.setSeed(seed);
+		ProblemSpec problem = new ProblemSpec();
 		try {
-			ps.loadProblem(inputPath);
+			problem.loadProblem(inputPath);
 		} catch (IOException e) {
 			e.printStackTrace();
 			return;
 		}
+		setProblem(problem);
+		CollisionChecker collisionChecker = new CollisionChecker(problem);
+		collisionChecker.setResolution(resolution);
+		collisionChecker.setUseClearance(useClearance);
+		if (cspaceResolution > 0) {
+			long rasteriseStart = System.nanoTime();
+			CSpaceBitmap bitmap = new CSpaceBitmap(collisionChecker,
+					cspaceResolution, getExecutor());
+			System.out.println(String.format(
+					"C-space bitmap of %d x %d cells ready in %.1f ms.",
+					bitmap.getNumCells(), bitmap.getNumCells(),
+					(System.nanoTime() - rasteriseStart) / 1e6));
+			setChecker(bitmap);
+		} else {
+			setChecker(collisionChecker);
+		}
 		System.out.println("Init: " + ps.getInitialState());
 		System.out.println("Goal: " + ps.getGoalState());
 		System.out.println("Obs:  " + ps.getObstacles());
 		System.out.println();
 
-		states.add(ps.getInitialState());
-		states.add(ps.getGoalState());
-		System.out.println("Generating states!");
-		generateStates(10000);
-		System.out.println("Connecting graph!");
-		connectStates(10);
-
-		Heuristic heuristic;
-		heuristic = new TotalAngleDeltaHeuristic(ps.getGoalState());
-		// heuristic = new ZeroHeuristic();
-
-		AbstractSearchAlgorithm algo;
-		// algo = new DepthFirstSearch(initialState, goalState);
-		// algo = new DepthLimitedSearch(10, initialState, goalState);
-		// algo = new IterativeDeepeningSearch(initialState, goalState);
+		if (gridStep > 0) {
+			GridPlanner planner = new GridPlanner(checker, gridStep);
+			long searchStart = System.nanoTime();
+			List<RobotArmState> path = planner.findPath(ps.getInitialState(),
+					ps.getGoalState());
+			System.out.println(String.format(
+					"Grid search took %.1f ms; %d nodes expanded, "
+							+ "%d checks made.",
+					(System.nanoTime() - searchStart) / 1e6,
+					planner.getNumExpanded(), planner.getNumChecked()));
+			if (path == null) {
+				System.out.println("No path found.");
+				return;
+			}
+			System.out.println("Path found, length " + path.size());
+			path = shortcutPath(path, shortcutBudget);
+			try {
+				writeOutput(path, outputPath);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 
-		// algo = new BreadthFirstSearch(initialState, goalState);
-		algo = new AStarSearch(ps.getInitialState(), ps.getGoalState(),
-				heuristic);
+		if (budget > 0) {
+			final String finalOutputPath = outputPath;
+			final long anytimeStart = System.nanoTime();
+			List<RobotArmState> path = solveAnytime(budget, new PathListener() {
+				@Override
+				public void pathImproved(List<RobotArmState> path,
+						double cost, int numStates) {
+					System.out.println(String.format(
+							"Path of cost %.1f found after %.1f ms "
+									+ "with %d states.", cost,
+							(System.nanoTime() - anytimeStart) / 1e6,
+							numStates));
+					try {
+						publishOutput(path, finalOutputPath);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			System.out.println(String.format("Stopped after %.1f ms.",
+					(System.nanoTime() - anytimeStart) / 1e6));
+			// Shortcutting comes out of the same budget, so it only gets
+			// whatever time the rounds left over.
+			long remaining = (anytimeStart + budget * 1000000 - System
+					.nanoTime()) / 1000000;
+			if (path == null) {
+				System.out.println("No path found.");
+			} else if (shortcutBudget > 0 && remaining > 0) {
+				try {
+					publishOutput(shortcutPath(path,
+							Math.min(shortcutBudget, remaining)), outputPath);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (tracePath != null) {
+				try {
+					writeTrace(tracePath);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			return;
+		}
 
-		System.out.println("Searching!");
-		System.out.println();
+		long buildStart = System.nanoTime();
+		Roadmap roadmap = buildRoadmap(cache, lazy);
+		System.out.println(String.format(
+				"Roadmap of %d states ready in %.1f ms.",
+				roadmap.getNumNodes(), (System.nanoTime() - buildStart) / 1e6));
+		if (queriesPath != null) {
+			try {
+				solveBatch(roadmap, queriesPath, outputPath, lazy);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 
-		algo.verboseSearch();
-		if (algo.goalFound()) {
-			List<RobotArmState> path = new ArrayList<RobotArmState>();
-			for (State s : algo.getGoalPath()) {
-				path.add((RobotArmState) s);
+		List<RobotArmState> path = null;
+		for (int round = 0;; round++) {
+			RoadmapQuery query = new RoadmapQuery(roadmap, checker,
+					ps.getInitialState(), ps.getGoalState());
+			path = solveQuery(query, lazy);
+			if (path != null || round == MAX_GROWTH_ROUNDS) {
+				break;
 			}
+			System.out.println("Growing roadmap!");
+			roadmap = growRoadmap(DEFAULT_NUM_SAMPLES / 2, lazy);
+		}
+		if (tracePath != null) {
+			try {
+				writeTrace(tracePath);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (path != null) {
+			path = shortcutPath(path, shortcutBudget);
 			try {
 				writeOutput(path, outputPath);
 			} catch (IOException e) {
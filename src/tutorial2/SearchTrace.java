@@ -0,0 +1,390 @@
+package tutorial2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A record of a roadmap query, for seeing why the query took as long as it
+ * did: the nodes and edges of the roadmap, the status of each edge, the
+ * order in which the search expanded the nodes, and the path it found.
+ * 
+ * The nodes are numbered as in the RoadmapQuery, so the start and goal are
+ * the last two nodes. Each edge is held once, from its lower node to its
+ * higher one; the links from the start and goal into the roadmap are held
+ * as VALID edges, since the query only keeps valid links.
+ * 
+ * The file format is a header of a magic number, a version and the numbers
+ * of nodes, edges, expansions and path nodes, followed by the angles of the
+ * nodes, as 32-bit floats in radians, the two ends of each edge, the status
+ * of each edge, the expansions and the path, each as a flat array. As with
+ * roadmap files, everything is big-endian, and a node costs 8 bytes and an
+ * edge 9 bytes.
+ * 
+ * @author lackofcheese
+ */
+public class SearchTrace {
+	/** The magic number at the start of a trace file ("RTRC") */
+	private static final int FILE_MAGIC = 0x52545243;
+	/** The version of the trace file format */
+	private static final int FILE_VERSION = 1;
+	/** The size of the header of a trace file, in bytes */
+	private static final int FILE_HEADER_SIZE = 24;
+
+	/** The first angle of each node */
+	private float[] angles1;
+	/** The second angle of each node */
+	private float[] angles2;
+	/** The lower node of each edge */
+	private int[] edgeFrom;
+	/** The higher node of each edge */
+	private int[] edgeTo;
+	/** The status of each edge, as per Roadmap */
+	private byte[] edgeStatus;
+	/** The nodes expanded by the search, in order */
+	private int[] expanded;
+	/** The nodes along the path found, from start to goal; may be empty */
+	private int[] path;
+
+	/**
+	 * Constructs a trace directly from its arrays.
+	 * 
+	 * @param angles1
+	 *            the first angle of each node.
+	 * @param angles2
+	 *            the second angle of each node.
+	 * @param edgeFrom
+	 *            the lower node of each edge.
+	 * @param edgeTo
+	 *            the higher node of each edge.
+	 * @param edgeStatus
+	 *            the status of each edge.
+	 * @param expanded
+	 *            the nodes expanded by the search, in order.
+	 * @param path
+	 *            the nodes along the path found, or an empty array if there
+	 *            is none.
+	 */
+	public SearchTrace(float[] angles1, float[] angles2, int[] edgeFrom,
+			int[] edgeTo, byte[] edgeStatus, int[] expanded, int[] path) {
+		this.angles1 = angles1;
+		this.angles2 = angles2;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeStatus = edgeStatus;
+		this.expanded = expanded;
+		this.path = path;
+	}
+
+	/**
+	 * Records the roadmap and links of the given query, along with the
+	 * results of a search over it.
+	 * 
+	 * @param query
+	 *            the query.
+	 * @param expanded
+	 *            the nodes expanded by the search, in order.
+	 * @param path
+	 *            the nodes along the path found, or null if there is none.
+	 * @return the trace.
+	 */
+	public static SearchTrace record(RoadmapQuery query, int[] expanded,
+			int[] path) {
+		Roadmap roadmap = query.getRoadmap();
+		int numNodes = query.getNumNodes();
+		float[] angles1 = new float[numNodes];
+		float[] angles2 = new float[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			angles1[node] = (float) query.getAngle1(node);
+			angles2[node] = (float) query.getAngle2(node);
+		}
+
+		int start = query.getStartNode();
+		int goal = query.getGoalNode();
+		int numEdges = roadmap.getNumEdges() / 2 + query.getNumLinks(start)
+				+ query.getNumLinks(goal)
+				+ (query.getDirectCost() >= 0 ? 1 : 0);
+		int[] edgeFrom = new int[numEdges];
+		int[] edgeTo = new int[numEdges];
+		byte[] edgeStatus = new byte[numEdges];
+		int k = 0;
+		for (int node = 0; node < roadmap.getNumNodes(); node++) {
+			for (int e = roadmap.getFirstEdge(node); e < roadmap
+					.getEndEdge(node); e++) {
+				int neighbour = roadmap.getNeighbour(e);
+				if (neighbour > node) {
+					edgeFrom[k] = node;
+					edgeTo[k] = neighbour;
+					edgeStatus[k++] = roadmap.getEdgeStatus(e);
+				}
+			}
+		}
+		for (int end : new int[] { start, goal }) {
+			for (int i = 0; i < query.getNumLinks(end); i++) {
+				edgeFrom[k] = query.getLink(end, i);
+				edgeTo[k] = end;
+				edgeStatus[k++] = Roadmap.VALID;
+			}
+		}
+		if (query.getDirectCost() >= 0) {
+			edgeFrom[k] = start;
+			edgeTo[k] = goal;
+			edgeStatus[k++] = Roadmap.VALID;
+		}
+		return new SearchTrace(angles1, angles2, edgeFrom, edgeTo,
+				edgeStatus, expanded, path == null ? new int[0] : path);
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 * 
+	 * @return the number of nodes.
+	 */
+	public int getNumNodes() {
+		return angles1.length;
+	}
+
+	/**
+	 * Returns the number of edges.
+	 * 
+	 * @return the number of edges.
+	 */
+	public int getNumEdges() {
+		return edgeFrom.length;
+	}
+
+	/**
+	 * Returns the first angle of the given node.
+	 * 
+	 * @param node
+	 *            the node.
+	 * @return the first angle of the node, in radians.
+	 */
+	public float getAngle1(int node) {
+		return angles1[node];
+	}
+
+	/**
+	 * Returns the second angle of the given node.
+	 * 
+	 * @param node
+	 *            the node.
+	 * @return the second angle of the node, in radians.
+	 */
+	public float getAngle2(int node) {
+		return angles2[node];
+	}
+
+	/**
+	 * Returns the lower node of the given edge.
+	 * 
+	 * @param edge
+	 *            the edge.
+	 * @return the lower node of the edge.
+	 */
+	public int getEdgeFrom(int edge) {
+		return edgeFrom[edge];
+	}
+
+	/**
+	 * Returns the higher node of the given edge.
+	 * 
+	 * @param edge
+	 *            the edge.
+	 * @return the higher node of the edge.
+	 */
+	public int getEdgeTo(int edge) {
+		return edgeTo[edge];
+	}
+
+	/**
+	 * Returns the status of the given edge.
+	 * 
+	 * @param edge
+	 *            the edge.
+	 * @return UNCHECKED, VALID or INVALID, as per Roadmap.
+	 */
+	public byte getEdgeStatus(int edge) {
+		return edgeStatus[edge];
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the search.
+	 * 
+	 * @return the number of nodes expanded.
+	 */
+	public int getNumExpanded() {
+		return expanded.length;
+	}
+
+	/**
+	 * Returns the node expanded at the given point in the search.
+	 * 
+	 * @param i
+	 *            the number of nodes expanded before it.
+	 * @return the node.
+	 */
+	public int getExpanded(int i) {
+		return expanded[i];
+	}
+
+	/**
+	 * Returns the number of nodes along the path found.
+	 * 
+	 * @return the number of nodes along the path, or 0 if there is none.
+	 */
+	public int getPathLength() {
+		return path.length;
+	}
+
+	/**
+	 * Returns the node at the given point along the path found.
+	 * 
+	 * @param i
+	 *            the index along the path, from 0 at the start.
+	 * @return the node.
+	 */
+	public int getPathNode(int i) {
+		return path[i];
+	}
+
+	/**
+	 * Returns the start node of the query.
+	 * 
+	 * @return the start node.
+	 */
+	public int getStartNode() {
+		return angles1.length - 2;
+	}
+
+	/**
+	 * Returns the goal node of the query.
+	 * 
+	 * @return the goal node.
+	 */
+	public int getGoalNode() {
+		return angles1.length - 1;
+	}
+
+	/**
+	 * Writes this trace to a binary file.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @throws IOException
+	 *             if there is an error writing to the file.
+	 */
+	public void write(File file) throws IOException {
+		int numNodes = getNumNodes();
+		int numEdges = getNumEdges();
+		long size = FILE_HEADER_SIZE + 8L * numNodes + 9L * numEdges + 4L
+				* expanded.length + 4L * path.length;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(FILE_MAGIC);
+			buffer.putInt(FILE_VERSION);
+			buffer.putInt(numNodes);
+			buffer.putInt(numEdges);
+			buffer.putInt(expanded.length);
+			buffer.putInt(path.length);
+			buffer.asFloatBuffer().put(angles1);
+			buffer.position(buffer.position() + 4 * numNodes);
+			buffer.asFloatBuffer().put(angles2);
+			buffer.position(buffer.position() + 4 * numNodes);
+			buffer.asIntBuffer().put(edgeFrom);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.asIntBuffer().put(edgeTo);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.put(edgeStatus);
+			buffer.asIntBuffer().put(expanded);
+			buffer.position(buffer.position() + 4 * expanded.length);
+			buffer.asIntBuffer().put(path);
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a trace from a binary file written by write(File).
+	 * 
+	 * @param file
+	 *            the file to read from.
+	 * @return the trace.
+	 * @throws IOException
+	 *             if the file can't be read, or isn't a valid trace file.
+	 */
+	public static SearchTrace read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long size = raf.length();
+			if (size < FILE_HEADER_SIZE) {
+				throw new IOException("Trace file is truncated: " + file);
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt() != FILE_MAGIC
+					|| buffer.getInt() != FILE_VERSION) {
+				throw new IOException("Not a trace file: " + file);
+			}
+			int numNodes = buffer.getInt();
+			int numEdges = buffer.getInt();
+			int numExpanded = buffer.getInt();
+			int pathLength = buffer.getInt();
+			if (numNodes < 2 || numEdges < 0 || numExpanded < 0
+					|| pathLength < 0
+					|| size != FILE_HEADER_SIZE + 8L * numNodes + 9L
+							* numEdges + 4L * numExpanded + 4L * pathLength) {
+				throw new IOException("Trace file is truncated: " + file);
+			}
+			float[] angles1 = new float[numNodes];
+			float[] angles2 = new float[numNodes];
+			int[] edgeFrom = new int[numEdges];
+			int[] edgeTo = new int[numEdges];
+			byte[] edgeStatus = new byte[numEdges];
+			int[] expanded = new int[numExpanded];
+			int[] path = new int[pathLength];
+			buffer.asFloatBuffer().get(angles1);
+			buffer.position(buffer.position() + 4 * numNodes);
+			buffer.asFloatBuffer().get(angles2);
+			buffer.position(buffer.position() + 4 * numNodes);
+			buffer.asIntBuffer().get(edgeFrom);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.asIntBuffer().get(edgeTo);
+			buffer.position(buffer.position() + 4 * numEdges);
+			buffer.get(edgeStatus);
+			buffer.asIntBuffer().get(expanded);
+			buffer.position(buffer.position() + 4 * numExpanded);
+			buffer.asIntBuffer().get(path);
+			checkNodes(edgeFrom, numNodes, file);
+			checkNodes(edgeTo, numNodes, file);
+			checkNodes(expanded, numNodes, file);
+			checkNodes(path, numNodes, file);
+			return new SearchTrace(angles1, angles2, edgeFrom, edgeTo,
+					edgeStatus, expanded, path);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks that every entry of the given array is a valid node.
+	 * 
+	 * @throws IOException
+	 *             if any of them isn't.
+	 */
+	private static void checkNodes(int[] nodes, int numNodes, File file)
+			throws IOException {
+		for (int node : nodes) {
+			if (node < 0 || node >= numNodes) {
+				throw new IOException("Trace file has an invalid node: "
+						+ file);
+			}
+		}
+	}
+}
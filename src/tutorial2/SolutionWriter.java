@@ -0,0 +1,250 @@
+package tutorial2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes solution paths to a stream, either as text or in a compact binary
+ * format, through its own buffer.
+ * 
+ * In text, each state is a line holding its two angles in degrees, to three
+ * decimal places, as in the assignment specifications; the digits are
+ * written straight into the buffer rather than via String.format. In binary,
+ * the file starts with a header of a magic number and a version, both 32-bit
+ * ints; each state is then a pair of 32-bit floats holding its angles in
+ * radians. Everything is big-endian. A path file (PATH_MAGIC) holds the
+ * states of a single path, up to the end of the file; a batch file
+ * (BATCH_MAGIC) holds a 32-bit count of states before each path.
+ * 
+ * @author lackofcheese
+ */
+public class SolutionWriter implements Closeable {
+	/** The magic number at the start of a binary path file ("RSOL") */
+	public static final int PATH_MAGIC = 0x52534F4C;
+	/** The magic number at the start of a binary batch file ("RBAT") */
+	public static final int BATCH_MAGIC = 0x52424154;
+	/** The version of the binary file formats */
+	public static final int FILE_VERSION = 1;
+	/** The size of the header of a binary file, in bytes */
+	public static final int FILE_HEADER_SIZE = 8;
+
+	/** The size of the buffer, in bytes */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** The longest line of text that can be written for a state */
+	private static final int MAX_LINE_SIZE = 64;
+	/**
+	 * How close the thousandths of a degree may come to a half before the
+	 * rounding is left to Formatter
+	 */
+	private static final double TIE_TOLERANCE = 1e-6;
+	/** The line separator, as bytes */
+	private static final byte[] NEWLINE = System.getProperty(
+			"line.separator").getBytes();
+
+	/** The stream to write to */
+	private OutputStream out;
+	/** Whether to write in binary */
+	private boolean binary;
+	/** The bytes waiting to be written */
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/** A view of the buffer, for writing binary values */
+	private ByteBuffer view = ByteBuffer.wrap(buffer);
+	/** The number of bytes waiting to be written */
+	private int size;
+
+	/**
+	 * Constructs a writer for the given stream; a binary writer starts by
+	 * writing the file header.
+	 * 
+	 * @param out
+	 *            the stream to write to; it is closed along with the writer.
+	 * @param binary
+	 *            whether to write in binary, rather than as text.
+	 * @param batch
+	 *            whether this is the binary format for many paths, as per
+	 *            startPath; this has no effect on text.
+	 */
+	public SolutionWriter(OutputStream out, boolean binary, boolean batch) {
+		this.out = out;
+		this.binary = binary;
+		if (binary) {
+			view.putInt(0, batch ? BATCH_MAGIC : PATH_MAGIC);
+			view.putInt(4, FILE_VERSION);
+			size = FILE_HEADER_SIZE;
+		}
+	}
+
+	/**
+	 * Writes every state of the given path.
+	 * 
+	 * @param path
+	 *            the path.
+	 * @throws IOException
+	 *             if there is an error writing to the stream.
+	 */
+	public void writePath(List<RobotArmState> path) throws IOException {
+		for (RobotArmState s : path) {
+			writeState(s.getAngle1(), s.getAngle2());
+		}
+	}
+
+	/**
+	 * Writes the start of a path in a batch; in text, this is a line "query
+	 * &lt;number&gt; &lt;length&gt;", and in binary, it is the length alone.
+	 * The states of the path must follow.
+	 * 
+	 * @param number
+	 *            the number of the query the path answers, from 1.
+	 * @param length
+	 *            the number of states in the path.
+	 * @throws IOException
+	 *             if there is an error writing to the stream.
+	 */
+	public void startPath(int number, int length) throws IOException {
+		reserve(MAX_LINE_SIZE);
+		if (binary) {
+			view.putInt(size, length);
+			size += 4;
+			return;
+		}
+		putAscii("query ");
+		putLong(number);
+		buffer[size++] = ' ';
+		putLong(length);
+		putNewline();
+	}
+
+	/**
+	 * Writes a single state.
+	 * 
+	 * @param angle1
+	 *            the first angle, in radians.
+	 * @param angle2
+	 *            the second angle, in radians.
+	 * @throws IOException
+	 *             if there is an error writing to the stream.
+	 */
+	public void writeState(double angle1, double angle2) throws IOException {
+		reserve(MAX_LINE_SIZE);
+		if (binary) {
+			view.putFloat(size, (float) angle1);
+			view.putFloat(size + 4, (float) angle2);
+			size += 8;
+			return;
+		}
+		putDegrees(angle1);
+		buffer[size++] = ' ';
+		putDegrees(angle2);
+		putNewline();
+	}
+
+	/**
+	 * Writes out everything in the buffer.
+	 * 
+	 * @throws IOException
+	 *             if there is an error writing to the stream.
+	 */
+	public void flush() throws IOException {
+		out.write(buffer, 0, size);
+		size = 0;
+		out.flush();
+	}
+
+	/**
+	 * Writes out everything in the buffer, and closes the stream.
+	 * 
+	 * @throws IOException
+	 *             if there is an error writing to or closing the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			out.write(buffer, 0, size);
+			size = 0;
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes out the buffer if it has less than the given space left.
+	 */
+	private void reserve(int space) throws IOException {
+		if (size + space > buffer.length) {
+			out.write(buffer, 0, size);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Adds the given angle to the buffer, in degrees, to three decimal
+	 * places, exactly as String.format("%.3f") would write it; in
+	 * particular, negative angles keep their sign even if they round to
+	 * zero.
+	 * 
+	 * Formatter rounds the shortest decimal representation of the value half
+	 * up, and the product of the value and 1000 may land on either side of
+	 * a half when that representation ends in 5; such values, and only
+	 * those, are handed to String.format itself.
+	 */
+	private void putDegrees(double angle) {
+		double degrees = Math.toDegrees(angle);
+		if (Double.isNaN(degrees) || Double.isInfinite(degrees)) {
+			putAscii(Double.toString(degrees));
+			return;
+		}
+		double scaled = Math.abs(degrees) * 1000;
+		if (Math.abs(scaled - Math.floor(scaled) - 0.5) < TIE_TOLERANCE) {
+			putAscii(String.format(Locale.ROOT, "%.3f", degrees));
+			return;
+		}
+		long thousandths = Math.round(scaled);
+		if (Double.doubleToRawLongBits(degrees) < 0) {
+			buffer[size++] = '-';
+		}
+		putLong(thousandths / 1000);
+		buffer[size++] = '.';
+		long fraction = thousandths % 1000;
+		buffer[size++] = (byte) ('0' + fraction / 100);
+		buffer[size++] = (byte) ('0' + fraction / 10 % 10);
+		buffer[size++] = (byte) ('0' + fraction % 10);
+	}
+
+	/**
+	 * Adds the digits of the given non-negative number to the buffer.
+	 */
+	private void putLong(long value) {
+		int start = size;
+		do {
+			buffer[size++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		for (int i = start, j = size - 1; i < j; i++, j--) {
+			byte b = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = b;
+		}
+	}
+
+	/**
+	 * Adds the given ASCII string to the buffer.
+	 */
+	private void putAscii(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			buffer[size++] = (byte) s.charAt(i);
+		}
+	}
+
+	/**
+	 * Adds the line separator to the buffer.
+	 */
+	private void putNewline() {
+		for (byte b : NEWLINE) {
+			buffer[size++] = b;
+		}
+	}
+}
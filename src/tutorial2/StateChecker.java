@@ -0,0 +1,74 @@
+package tutorial2;
+
+/**
+ * Decides whether robot arm configurations, and the direct paths between
+ * them, are free of collisions.
+ * 
+ * @author lackofcheese
+ */
+public interface StateChecker {
+	/**
+	 * Returns whether the given state is valid.
+	 * 
+	 * @param s
+	 *            the state to test.
+	 * @return true if s is a valid state, and false otherwise.
+	 */
+	public boolean isValidState(RobotArmState s);
+
+	/**
+	 * Returns whether the arm is valid with the given joint angles.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @return true if the configuration is valid, and false otherwise.
+	 */
+	public boolean isValidState(double angle1, double angle2);
+
+	/**
+	 * Returns whether there is a valid direct path between the given two robot
+	 * arm states.
+	 * 
+	 * @param s0
+	 *            the first state.
+	 * @param s1
+	 *            the second state.
+	 * @return true if the direct path is valid, and false otherwise.
+	 */
+	public boolean hasDirectPath(RobotArmState s0, RobotArmState s1);
+
+	/**
+	 * Returns whether there is a valid direct path between the two given
+	 * configurations; the configurations themselves are assumed to be valid.
+	 * 
+	 * @param angle1_0
+	 *            the first angle of the first configuration.
+	 * @param angle2_0
+	 *            the second angle of the first configuration.
+	 * @param angle1_1
+	 *            the first angle of the second configuration.
+	 * @param angle2_1
+	 *            the second angle of the second configuration.
+	 * @return true if the direct path is valid, and false otherwise.
+	 */
+	public boolean hasDirectPath(double angle1_0, double angle2_0,
+			double angle1_1, double angle2_1);
+
+	/**
+	 * Returns the finest step in either angle at which paths are checked.
+	 * 
+	 * @return the resolution, in degrees.
+	 */
+	public double getResolution();
+
+	/**
+	 * Returns a description of every setting that affects which states and
+	 * paths this checker accepts, so that roadmaps built with differently
+	 * configured checkers can be told apart.
+	 * 
+	 * @return the description of the settings.
+	 */
+	public String getSettings();
+}
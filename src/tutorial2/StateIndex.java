@@ -0,0 +1,193 @@
+package tutorial2;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index over the configuration space (angle1, angle2) of the robot
+ * arm, used to find every indexed state within a given total angle delta of a
+ * query point without comparing against all of them.
+ * 
+ * The index is a uniform grid; the angle1 axis wraps around at +/-pi in the
+ * same way as StateTools.totalAngleDelta, while the angle2 axis covers
+ * [-pi, pi] and clamps anything outside of that range into the edge cells.
+ * Candidates found in the grid are filtered with the exact total angle delta,
+ * so the results are identical to an all-pairs scan.
+ * 
+ * @author lackofcheese
+ */
+public class StateIndex {
+	/** The number of cells along the angle1 axis */
+	private int numCells1;
+	/** The number of cells along the angle2 axis */
+	private int numCells2;
+	/** The width of a cell along the angle1 axis, in radians */
+	private double cellWidth1;
+	/** The width of a cell along the angle2 axis, in radians */
+	private double cellWidth2;
+
+	/** The IDs of the states in each cell */
+	private int[][] cells;
+	/** The number of states in each cell */
+	private int[] cellCounts;
+
+	/** The first angle of each indexed state, by ID */
+	private double[] angles1 = new double[16];
+	/** The second angle of each indexed state, by ID */
+	private double[] angles2 = new double[16];
+	/** The number of indexed states */
+	private int size = 0;
+
+	/**
+	 * Constructs an empty index tuned for queries with the given maximum
+	 * total angle delta; larger queries still work, but examine more cells.
+	 * 
+	 * @param maxAngleDelta
+	 *            the typical query radius, in degrees.
+	 */
+	public StateIndex(double maxAngleDelta) {
+		double cellSize = Math.toRadians(maxAngleDelta);
+		numCells1 = Math.max(1, (int) Math.floor(2 * Math.PI / cellSize));
+		numCells2 = numCells1;
+		cellWidth1 = 2 * Math.PI / numCells1;
+		cellWidth2 = 2 * Math.PI / numCells2;
+		cells = new int[numCells1 * numCells2][];
+		cellCounts = new int[numCells1 * numCells2];
+	}
+
+	/**
+	 * Adds a state to the index.
+	 * 
+	 * @param s
+	 *            the state to add.
+	 * @return the ID assigned to the state; IDs are assigned sequentially
+	 *         from 0.
+	 */
+	public int add(RobotArmState s) {
+		return add(s.getAngle1(), s.getAngle2());
+	}
+
+	/**
+	 * Adds a configuration to the index.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @return the ID assigned to the configuration; IDs are assigned
+	 *         sequentially from 0.
+	 */
+	public int add(double angle1, double angle2) {
+		if (size == angles1.length) {
+			angles1 = Arrays.copyOf(angles1, size * 2);
+			angles2 = Arrays.copyOf(angles2, size * 2);
+		}
+		int id = size++;
+		angles1[id] = angle1;
+		angles2[id] = angle2;
+
+		int cell = cellIndex1(angle1) * numCells2 + cellIndex2(angle2);
+		int[] ids = cells[cell];
+		if (ids == null) {
+			ids = new int[4];
+			cells[cell] = ids;
+		} else if (cellCounts[cell] == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+			cells[cell] = ids;
+		}
+		ids[cellCounts[cell]++] = id;
+		return id;
+	}
+
+	/**
+	 * Returns the number of states in the index.
+	 * 
+	 * @return the number of states in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the IDs of all indexed states whose total angle delta from the
+	 * given state is no greater than the given maximum.
+	 * 
+	 * @param s
+	 *            the state to search around.
+	 * @param maxAngleDelta
+	 *            the maximum total angle delta, in degrees.
+	 * @param out
+	 *            the list to append the IDs of the neighbours to.
+	 */
+	public void findNeighbours(RobotArmState s, double maxAngleDelta,
+			IntList out) {
+		findNeighbours(s.getAngle1(), s.getAngle2(), maxAngleDelta, out);
+	}
+
+	/**
+	 * Finds the IDs of all indexed states whose total angle delta from the
+	 * given configuration is no greater than the given maximum. The
+	 * configuration itself is included if it has been indexed.
+	 * 
+	 * @param angle1
+	 *            the angle of the first rod.
+	 * @param angle2
+	 *            the angle of the second rod.
+	 * @param maxAngleDelta
+	 *            the maximum total angle delta, in degrees.
+	 * @param out
+	 *            the list to append the IDs of the neighbours to.
+	 */
+	public void findNeighbours(double angle1, double angle2,
+			double maxAngleDelta, IntList out) {
+		double radius = Math.toRadians(maxAngleDelta);
+		int span1 = (int) Math.ceil(radius / cellWidth1);
+		int span2 = (int) Math.ceil(radius / cellWidth2);
+
+		int first1, last1;
+		if (2 * span1 + 1 >= numCells1) {
+			first1 = 0;
+			last1 = numCells1 - 1;
+		} else {
+			int c1 = cellIndex1(angle1);
+			first1 = c1 - span1;
+			last1 = c1 + span1;
+		}
+		int c2 = cellIndex2(angle2);
+		int first2 = Math.max(0, c2 - span2);
+		int last2 = Math.min(numCells2 - 1, c2 + span2);
+
+		for (int i1 = first1; i1 <= last1; i1++) {
+			int row = ((i1 % numCells1) + numCells1) % numCells1 * numCells2;
+			for (int i2 = first2; i2 <= last2; i2++) {
+				int cell = row + i2;
+				int[] ids = cells[cell];
+				int count = cellCounts[cell];
+				for (int k = 0; k < count; k++) {
+					int id = ids[k];
+					if (StateTools.totalAngleDelta(angle1, angle2,
+							angles1[id], angles2[id]) <= maxAngleDelta) {
+						out.add(id);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the angle1 cell index of the given angle, wrapping around at
+	 * +/-pi.
+	 */
+	private int cellIndex1(double angle1) {
+		double a = angle1 + Math.PI;
+		a -= 2 * Math.PI * Math.floor(a / (2 * Math.PI));
+		return Math.min(numCells1 - 1, (int) (a / cellWidth1));
+	}
+
+	/**
+	 * Returns the angle2 cell index of the given angle, clamping at the edges.
+	 */
+	private int cellIndex2(double angle2) {
+		int index = (int) Math.floor((angle2 + Math.PI) / cellWidth2);
+		return Math.max(0, Math.min(numCells2 - 1, index));
+	}
+}
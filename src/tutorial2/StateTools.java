@@ -1,11 +1,16 @@
 package tutorial2;
 
-import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.List;
 import java.util.Random;
 
 public class StateTools {
+	/**
+	 * The number of steps along a path between exact evaluations of the
+	 * sines and cosines in hasDirectPath.
+	 */
+	private static final int RESYNC_STEPS = 64;
+
 	/** The random number generator */
 	private static final Random random = new Random();
 
@@ -14,6 +19,32 @@ public class StateTools {
 		random.setSeed(seed);
 	}
 
+	/**
+	 * Draws a seed from the shared RNG, for seeding an RNG that is private to
+	 * a single thread or task.
+	 * 
+	 * @return a seed drawn from the shared RNG.
+	 */
+	public static long nextSeed() {
+		return random.nextLong();
+	}
+
+	/**
+	 * Scrambles the given seed with the SplitMix64 finaliser. Random streams
+	 * seeded with nearby values start out correlated, so seeds that differ
+	 * only by a small offset should be passed through this first.
+	 * 
+	 * @param seed
+	 *            the seed.
+	 * @return the scrambled seed.
+	 */
+	public static long mixSeed(long seed) {
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	/**
 	 * Generates a random RAS with the given rod lengths.
 	 * 
@@ -24,6 +55,23 @@ public class StateTools {
 	 * @return a random RAS.
 	 */
 	public static RobotArmState createRandomState(double length1, double length2) {
+		return createRandomState(random, length1, length2);
+	}
+
+	/**
+	 * Generates a random RAS with the given rod lengths, using the given RNG
+	 * rather than the shared one.
+	 * 
+	 * @param random
+	 *            the RNG to use.
+	 * @param length1
+	 *            length of rod 1
+	 * @param length2
+	 *            length of rod 2.
+	 * @return a random RAS.
+	 */
+	public static RobotArmState createRandomState(Random random,
+			double length1, double length2) {
 		double angle1 = (random.nextDouble() - 0.5) * Math.PI * 2;
 		double angle2 = (random.nextDouble() - 0.5) * Math.PI * 2;
 		return new RobotArmState(length1, length2, angle1, angle2);
@@ -39,10 +87,25 @@ public class StateTools {
 	 * @return the total angle delta between the two states.
 	 */
 	public static double totalAngleDelta(RobotArmState s0, RobotArmState s1) {
-		double angle1_0 = s0.getAngle1();
-		double angle1_1 = s1.getAngle1();
-		double angle2_0 = s0.getAngle2();
-		double angle2_1 = s1.getAngle2();
+		return totalAngleDelta(s0.getAngle1(), s0.getAngle2(), s1.getAngle1(),
+				s1.getAngle2());
+	}
+
+	/**
+	 * Returns the total angle delta between the two given configurations.
+	 * 
+	 * @param angle1_0
+	 *            the first angle of the first configuration.
+	 * @param angle2_0
+	 *            the second angle of the first configuration.
+	 * @param angle1_1
+	 *            the first angle of the second configuration.
+	 * @param angle2_1
+	 *            the second angle of the second configuration.
+	 * @return the total angle delta between the two configurations.
+	 */
+	public static double totalAngleDelta(double angle1_0, double angle2_0,
+			double angle1_1, double angle2_1) {
 		double d1 = Math.abs(angle1_1 - angle1_0);
 		double d2 = Math.abs(angle2_1 - angle2_0);
 		if (d1 > Math.PI) {
@@ -83,12 +146,11 @@ public class StateTools {
 	 * @return true if s is a valid state, and false otherwise.
 	 */
 	public static boolean isValidState(RobotArmState s, List<Obstacle> obstacles) {
-		for (Point2D p : s.getPoints()) {
-			for (double coord : new double[] { p.getX(), p.getY() }) {
-				if (coord < 0 || coord > 1) {
-					return false;
-				}
-			}
+		// The base is always in the unit square.
+		if (s.getJointX() < 0 || s.getJointX() > 1 || s.getJointY() < 0
+				|| s.getJointY() > 1 || s.getEndX() < 0 || s.getEndX() > 1
+				|| s.getEndY() < 0 || s.getEndY() > 1) {
+			return false;
 		}
 		for (Obstacle o : obstacles) {
 			if (hasCollision(s, o)) {
@@ -131,6 +193,12 @@ public class StateTools {
 	 * Returns whether there is a valid direct path between the given two robot
 	 * arm states.
 	 * 
+	 * The path is checked in equal steps, so rather than working out the
+	 * sines and cosines of the rod angles afresh at every step, each step
+	 * rotates them by the same small angle, using the angle-addition
+	 * identities. They are worked out afresh every RESYNC_STEPS steps, so
+	 * that rounding errors can't build up.
+	 * 
 	 * @param s0
 	 *            the first state.
 	 * @param s1
@@ -143,9 +211,45 @@ public class StateTools {
 			List<Obstacle> obstacles) {
 		double maxDelta = maxAngleDelta(s0, s1);
 		int numSteps = (int) Math.ceil(maxDelta * 10);
+		if (numSteps < 2) {
+			return true;
+		}
+		double angle1_0 = s0.getAngle1();
+		double angle1_1 = s1.getAngle1();
+		double angle2_0 = s0.getAngle2();
+		// Same wraparound as interpolate.
+		if (Math.abs(angle1_1 - angle1_0) > Math.PI) {
+			if (angle1_0 > angle1_1) {
+				angle1_0 -= 2 * Math.PI;
+			} else {
+				angle1_0 += 2 * Math.PI;
+			}
+		}
+		double step1 = (angle1_1 - angle1_0) / numSteps;
+		double step2 = (s1.getAngle2() - angle2_0) / numSteps;
+		double cosStep1 = Math.cos(step1);
+		double sinStep1 = Math.sin(step1);
+		double cosStep12 = Math.cos(step1 + step2);
+		double sinStep12 = Math.sin(step1 + step2);
+		double cos1 = 0, sin1 = 0, cos12 = 0, sin12 = 0;
 		for (int i = 1; i < numSteps; i++) {
-			double t = (i / (double) numSteps);
-			RobotArmState s = interpolate(s0, s1, t);
+			double angle1 = angle1_0 + step1 * i;
+			double angle2 = angle2_0 + step2 * i;
+			if ((i - 1) % RESYNC_STEPS == 0) {
+				cos1 = Math.cos(angle1);
+				sin1 = Math.sin(angle1);
+				cos12 = Math.cos(angle1 + angle2);
+				sin12 = Math.sin(angle1 + angle2);
+			} else {
+				double c = cos1 * cosStep1 - sin1 * sinStep1;
+				sin1 = sin1 * cosStep1 + cos1 * sinStep1;
+				cos1 = c;
+				c = cos12 * cosStep12 - sin12 * sinStep12;
+				sin12 = sin12 * cosStep12 + cos12 * sinStep12;
+				cos12 = c;
+			}
+			RobotArmState s = new RobotArmState(s0.getLength1(),
+					s0.getLength2(), angle1, angle2, cos1, sin1, cos12, sin12);
 			if (!isValidState(s, obstacles)) {
 				return false;
 			}
@@ -163,15 +267,10 @@ public class StateTools {
 	 * @return true if s collides with obs, and false otherwise.
 	 */
 	static boolean hasCollision(RobotArmState s, Obstacle obs) {
-		List<Point2D> points = s.getPoints();
-		Line2D line = new Line2D.Double(points.get(0), points.get(1));
-		if (line.intersects(obs.getRect())) {
-			return true;
-		}
-		line = new Line2D.Double(points.get(1), points.get(2));
-		if (line.intersects(obs.getRect())) {
-			return true;
-		}
-		return false;
+		Rectangle2D rect = obs.getRect();
+		return rect.intersectsLine(RobotArmState.BASE_X,
+				RobotArmState.BASE_Y, s.getJointX(), s.getJointY())
+				|| rect.intersectsLine(s.getJointX(), s.getJointY(),
+						s.getEndX(), s.getEndY());
 	}
 }
@@ -0,0 +1,206 @@
+package visualiser;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+import tutorial2.Obstacle;
+import tutorial2.RobotArmState;
+
+/**
+ * Draws the workspace, the arm and solution animations with plain Java2D, so
+ * that the same drawing is used both by the Swing VisualisationPanel and by
+ * the headless FrameExporter.
+ * 
+ * Solution animations are given as frame tables: the joint and end
+ * coordinates of the arm in every frame, four floats per frame, as built by
+ * computeFrames.
+ * 
+ * @author lackofcheese
+ */
+public class ArmRenderer {
+	/** Maps the unit square onto the drawing area, with y pointing up */
+	private AffineTransform transform = new AffineTransform();
+
+	/**
+	 * Sets the size of the area being drawn on.
+	 * 
+	 * @param width
+	 *            the width, in pixels.
+	 * @param height
+	 *            the height, in pixels.
+	 */
+	public void setSize(int width, int height) {
+		transform = AffineTransform.getScaleInstance(width, -height);
+		transform.translate(0, -1);
+	}
+
+	/**
+	 * Fills the drawing area with white, and draws the obstacles in red.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param width
+	 *            the width of the area, in pixels.
+	 * @param height
+	 *            the height of the area, in pixels.
+	 * @param obstacles
+	 *            the obstacles, or null if there are none.
+	 */
+	public void paintWorkspace(Graphics2D g2, int width, int height,
+			List<Obstacle> obstacles) {
+		g2.setColor(Color.WHITE);
+		g2.fillRect(0, 0, width, height);
+		if (obstacles == null) {
+			return;
+		}
+		g2.setColor(Color.red);
+		for (Obstacle obs : obstacles) {
+			Shape transformed = transform.createTransformedShape(obs.getRect());
+			g2.fill(transformed);
+		}
+	}
+
+	/**
+	 * Draws the arm in the given state, in the current colour and stroke.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param s
+	 *            the state, or null to draw nothing.
+	 */
+	public void paintState(Graphics2D g2, RobotArmState s) {
+		if (s == null) {
+			return;
+		}
+		paintArm(g2, s.getJointX(), s.getJointY(), s.getEndX(), s.getEndY());
+	}
+
+	/**
+	 * Draws the arm as it is in the given frame, in the current colour and
+	 * stroke.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param frames
+	 *            the frame table, or null to draw nothing.
+	 * @param frameNumber
+	 *            the number of the frame.
+	 */
+	public void paintFrame(Graphics2D g2, float[] frames, int frameNumber) {
+		if (frames == null) {
+			return;
+		}
+		int k = frameNumber * 4;
+		paintArm(g2, frames[k], frames[k + 1], frames[k + 2], frames[k + 3]);
+	}
+
+	/**
+	 * Draws every samplingPeriod-th frame of a solution, shading from blue
+	 * at the start to green at the end, and then the last frame in green.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param frames
+	 *            the frame table, or null to draw nothing.
+	 * @param samplingPeriod
+	 *            the number of frames between those drawn.
+	 */
+	public void paintTrail(Graphics2D g2, float[] frames, int samplingPeriod) {
+		if (frames == null) {
+			return;
+		}
+		int maxFrameNumber = frames.length / 4 - 1;
+		g2.setStroke(new BasicStroke(2));
+		for (int i = 0; i < maxFrameNumber; i += samplingPeriod) {
+			float t = (float) i / maxFrameNumber;
+			g2.setColor(new Color(0, t, 1 - t));
+			paintFrame(g2, frames, i);
+		}
+		g2.setColor(Color.green);
+		paintFrame(g2, frames, maxFrameNumber);
+	}
+
+	/**
+	 * Draws the two rods of the arm, from the base through the given joint
+	 * to the given end.
+	 */
+	private void paintArm(Graphics2D g2, double jointX, double jointY,
+			double endX, double endY) {
+		Path2D.Float path = new Path2D.Float();
+		path.moveTo(RobotArmState.BASE_X, RobotArmState.BASE_Y);
+		path.lineTo(jointX, jointY);
+		path.lineTo(endX, endY);
+		path.transform(transform);
+		g2.draw(path);
+	}
+
+	/**
+	 * Works out the joint and end coordinates of the arm in every frame of
+	 * the given solution. Each step of the solution is split into the given
+	 * number of frames; within a step the angles change by the same amount
+	 * each frame, so the sines and cosines are rotated from frame to frame
+	 * rather than worked out afresh.
+	 * 
+	 * @param path
+	 *            the solution path; it must not be empty.
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 * @param resolution
+	 *            the number of frames per step of the solution.
+	 * @return the frame table, with resolution * (path.size() - 1) + 1
+	 *         frames.
+	 */
+	public static float[] computeFrames(List<RobotArmState> path,
+			double length1, double length2, int resolution) {
+		int maxFrameNumber = resolution * (path.size() - 1);
+		float[] frames = new float[(maxFrameNumber + 1) * 4];
+		int k = 0;
+		for (int i = 0; i < path.size(); i++) {
+			RobotArmState s0 = path.get(i);
+			double angle1 = s0.getAngle1();
+			double angle2 = s0.getAngle2();
+			double cos1 = Math.cos(angle1), sin1 = Math.sin(angle1);
+			double cos12 = Math.cos(angle1 + angle2);
+			double sin12 = Math.sin(angle1 + angle2);
+			int numFrames = 1;
+			double cosStep1 = 1, sinStep1 = 0, cosStep12 = 1, sinStep12 = 0;
+			if (i < path.size() - 1) {
+				// Same wraparound as StateTools.interpolate.
+				RobotArmState s1 = path.get(i + 1);
+				double delta1 = s1.getAngle1() - angle1;
+				if (Math.abs(delta1) > Math.PI) {
+					delta1 -= Math.signum(delta1) * 2 * Math.PI;
+				}
+				double step1 = delta1 / resolution;
+				double step12 = step1 + (s1.getAngle2() - angle2) / resolution;
+				cosStep1 = Math.cos(step1);
+				sinStep1 = Math.sin(step1);
+				cosStep12 = Math.cos(step12);
+				sinStep12 = Math.sin(step12);
+				numFrames = resolution;
+			}
+			for (int j = 0; j < numFrames; j++) {
+				double jointX = RobotArmState.BASE_X + length1 * cos1;
+				double jointY = RobotArmState.BASE_Y + length1 * sin1;
+				frames[k++] = (float) jointX;
+				frames[k++] = (float) jointY;
+				frames[k++] = (float) (jointX + length2 * cos12);
+				frames[k++] = (float) (jointY + length2 * sin12);
+				double c = cos1 * cosStep1 - sin1 * sinStep1;
+				sin1 = sin1 * cosStep1 + cos1 * sinStep1;
+				cos1 = c;
+				c = cos12 * cosStep12 - sin12 * sinStep12;
+				sin12 = sin12 * cosStep12 + cos12 * sinStep12;
+				cos12 = c;
+			}
+		}
+		return frames;
+	}
+}
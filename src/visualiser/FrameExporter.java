@@ -0,0 +1,368 @@
+package visualiser;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import tutorial2.CollisionChecker;
+import tutorial2.ProblemSpec;
+import tutorial2.SearchTrace;
+
+/**
+ * Renders a solution to a series of PNG images without a display, as the
+ * visualiser would animate it, so that solutions can be reviewed without
+ * opening each one in the GUI. Along with one image per frame, it writes a
+ * single image of the whole solution, drawn as the visualiser draws it when
+ * it isn't animating.
+ * 
+ * The obstacles are drawn once; each frame is then a copy of that image with
+ * the arm drawn on top. Frames are drawn and encoded in parallel, in runs of
+ * consecutive frames, on a pool of worker threads.
+ * 
+ * @author lackofcheese
+ */
+public class FrameExporter {
+	/** The default number of frames per step of the solution */
+	public static final int DEFAULT_RESOLUTION = 10;
+	/** The default width and height of the images, in pixels */
+	public static final int DEFAULT_SIZE = 600;
+	/** The default number of frames between those in the trail image */
+	public static final int DEFAULT_SAMPLING_PERIOD = 10;
+	/** The number of consecutive frames drawn by each task */
+	private static final int FRAMES_PER_TASK = 32;
+	/** The name of the image of the whole solution */
+	public static final String TRAIL_FILENAME = "trail.png";
+	/** The name of the image of the trace in C-space */
+	public static final String CSPACE_FILENAME = "cspace.png";
+	/** The name of the image of the trace as a heatmap */
+	public static final String HEATMAP_FILENAME = "heatmap.png";
+
+	/** The frame table of the solution, as per ArmRenderer.computeFrames */
+	private float[] frames;
+	/** The width of the images, in pixels */
+	private int width;
+	/** The height of the images, in pixels */
+	private int height;
+	/** The problem being solved */
+	private ProblemSpec problem;
+	/** The obstacles, drawn once and shared by every frame */
+	private BufferedImage background;
+	/** The renderer, which is only read from once set up */
+	private ArmRenderer renderer = new ArmRenderer();
+
+	/**
+	 * Constructs an exporter for the solution loaded into the given problem.
+	 * 
+	 * @param problem
+	 *            the problem, with a non-empty solution loaded.
+	 * @param resolution
+	 *            the number of frames per step of the solution.
+	 * @param width
+	 *            the width of the images, in pixels.
+	 * @param height
+	 *            the height of the images, in pixels.
+	 */
+	public FrameExporter(ProblemSpec problem, int resolution, int width,
+			int height) {
+		this.problem = problem;
+		this.width = width;
+		this.height = height;
+		frames = ArmRenderer.computeFrames(problem.getPath(),
+				problem.getLength1(), problem.getLength2(), resolution);
+		renderer.setSize(width, height);
+		background = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = background.createGraphics();
+		try {
+			renderer.paintWorkspace(g2, width, height, problem.getObstacles());
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Returns the number of frames in the animation.
+	 * 
+	 * @return the number of frames.
+	 */
+	public int getNumFrames() {
+		return frames.length / 4;
+	}
+
+	/**
+	 * Writes the image of the whole solution to the given file.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @param samplingPeriod
+	 *            the number of frames between those drawn.
+	 * @throws IOException
+	 *             if the image can't be written.
+	 */
+	public void writeTrail(File file, int samplingPeriod) throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.drawImage(background, 0, 0, null);
+			renderer.paintTrail(g2, frames, samplingPeriod);
+		} finally {
+			g2.dispose();
+		}
+		writeImage(image, file);
+	}
+
+	/**
+	 * Writes images of the given search trace to the given directory: a plot
+	 * of it in C-space, and a heatmap of it over the workspace, as drawn by
+	 * TraceRenderer.
+	 * 
+	 * @param directory
+	 *            the directory to write to; it must already exist.
+	 * @param trace
+	 *            the trace to draw.
+	 * @throws IOException
+	 *             if the images can't be written.
+	 */
+	public void writeTrace(File directory, SearchTrace trace)
+			throws IOException {
+		TraceRenderer traceRenderer = new TraceRenderer();
+		traceRenderer.setSize(width, height);
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			traceRenderer.paintCSpace(g2, trace, TraceRenderer
+					.computeObstacleMap(new CollisionChecker(problem)));
+		} finally {
+			g2.dispose();
+		}
+		writeImage(image, new File(directory, CSPACE_FILENAME));
+
+		g2 = image.createGraphics();
+		try {
+			g2.drawImage(background, 0, 0, null);
+			traceRenderer.paintHeatmap(g2, trace, problem.getLength1(),
+					problem.getLength2());
+		} finally {
+			g2.dispose();
+		}
+		writeImage(image, new File(directory, HEATMAP_FILENAME));
+	}
+
+	/**
+	 * Writes every frame to the given directory, as frame_000000.png,
+	 * frame_000001.png and so on.
+	 * 
+	 * @param directory
+	 *            the directory to write to; it must already exist.
+	 * @param executor
+	 *            the executor to draw and encode the frames on, or null to
+	 *            do so on this thread.
+	 * @throws IOException
+	 *             if any frame can't be written.
+	 */
+	public void writeFrames(final File directory, ExecutorService executor)
+			throws IOException {
+		int numFrames = getNumFrames();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < numFrames; start += FRAMES_PER_TASK) {
+			final int first = start;
+			final int end = Math.min(numFrames, start + FRAMES_PER_TASK);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					writeFrames(directory, first, end);
+					return null;
+				}
+			});
+		}
+
+		if (executor == null) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException("Frame export failed", e);
+				}
+			}
+			return;
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while exporting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Frame export failed",
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Draws and writes the frames from first up to but not including end,
+	 * reusing one image for all of them.
+	 */
+	private void writeFrames(File directory, int first, int end)
+			throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.setStroke(new BasicStroke(2));
+			g2.setColor(Color.blue);
+			for (int i = first; i < end; i++) {
+				g2.drawImage(background, 0, 0, null);
+				renderer.paintFrame(g2, frames, i);
+				writeImage(image, new File(directory, String.format(
+						"frame_%06d.png", i)));
+			}
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Writes the given image to the given file as a PNG.
+	 */
+	private static void writeImage(BufferedImage image, File file)
+			throws IOException {
+		if (!ImageIO.write(image, "png", file)) {
+			throw new IOException("No PNG writer available");
+		}
+	}
+
+	/**
+	 * Prints the command-line options.
+	 */
+	private static void printUsage() {
+		System.err.println("Usage: FrameExporter [--resolution=<frames>] "
+				+ "[--size=<width>x<height>] [--sampling=<frames>] "
+				+ "[--threads=<count>] [--trail-only] [--trace=<trace-file>] "
+				+ "problem-file solution-file output-directory");
+	}
+
+	/**
+	 * Exports the frames of a solution.
+	 * 
+	 * @param args
+	 *            the problem and solution files, and the directory to write
+	 *            the images to; these may be preceded by options, as per
+	 *            printUsage.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		// Encode straight to the files rather than via temporary files.
+		ImageIO.setUseCache(false);
+		int resolution = DEFAULT_RESOLUTION;
+		int width = DEFAULT_SIZE;
+		int height = DEFAULT_SIZE;
+		int samplingPeriod = DEFAULT_SAMPLING_PERIOD;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		boolean trailOnly = false;
+		String tracePath = null;
+		List<String> positional = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--resolution=")) {
+				resolution = Integer.parseInt(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.startsWith("--size=")) {
+				String[] size = arg.substring(arg.indexOf('=') + 1).split(
+						"x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[size.length - 1]);
+			} else if (arg.startsWith("--sampling=")) {
+				samplingPeriod = Integer.parseInt(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.startsWith("--threads=")) {
+				numThreads = Integer.parseInt(arg.substring(arg
+						.indexOf('=') + 1));
+			} else if (arg.equals("--trail-only")) {
+				trailOnly = true;
+			} else if (arg.startsWith("--trace=")) {
+				tracePath = arg.substring(arg.indexOf('=') + 1);
+			} else if (arg.startsWith("--")) {
+				printUsage();
+				System.exit(2);
+			} else {
+				positional.add(arg);
+			}
+		}
+		if (positional.size() != 3 || resolution <= 0 || width <= 0
+				|| height <= 0 || samplingPeriod <= 0 || numThreads <= 0) {
+			printUsage();
+			System.exit(2);
+		}
+
+		ProblemSpec problem = new ProblemSpec();
+		try {
+			problem.loadProblem(positional.get(0));
+			problem.loadSolution(positional.get(1));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		if (problem.getPath().isEmpty()) {
+			System.err.println("The solution is empty.");
+			System.exit(1);
+		}
+		File directory = new File(positional.get(2));
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("Can't create directory " + directory);
+			System.exit(1);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "frame-encoder");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		long startTime = System.nanoTime();
+		try {
+			FrameExporter exporter = new FrameExporter(problem, resolution,
+					width, height);
+			exporter.writeTrail(new File(directory, TRAIL_FILENAME),
+					samplingPeriod);
+			if (tracePath != null) {
+				exporter.writeTrace(directory,
+						SearchTrace.read(new File(tracePath)));
+			}
+			if (!trailOnly) {
+				exporter.writeFrames(directory, executor);
+				System.out.println(String.format(
+						"Wrote %d frames to %s in %.1f ms.",
+						exporter.getNumFrames(), directory,
+						(System.nanoTime() - startTime) / 1e6));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
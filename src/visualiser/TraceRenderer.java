@@ -0,0 +1,334 @@
+package visualiser;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import tutorial2.Roadmap;
+import tutorial2.RobotArmState;
+import tutorial2.SearchTrace;
+import tutorial2.StateChecker;
+
+/**
+ * Draws a SearchTrace with plain Java2D, either as a plot of the roadmap in
+ * configuration space or as a heatmap over the workspace.
+ * 
+ * In the C-space plot, the first angle runs from 0 to 2 pi across the plot
+ * and the second from -pi to pi up it. Colliding configurations are shaded
+ * pink, edges are grey if valid, light grey if unchecked and orange if
+ * blocked, and the expanded nodes are shaded from blue to green in the order
+ * they were expanded. The path found is drawn in black on top.
+ * 
+ * To keep large roadmaps quick to draw, the plot is culled to the pixel
+ * grid: edges whose two ends fall in the same pixel are skipped, as is any
+ * node or expansion that falls in a pixel already drawn. Beyond
+ * MAX_DRAWN_EDGES edges, only an evenly spread subset of them is drawn.
+ * Edges are drawn in one batch per colour rather than one at a time.
+ * 
+ * In the heatmap, the workspace is divided into HEATMAP_CELLS by
+ * HEATMAP_CELLS cells, and each cell is shaded by how many nodes have the
+ * end of the arm in it: blue for the nodes of the roadmap, and green for the
+ * nodes expanded by the search. The shading is logarithmic, so that sparse
+ * areas still show up next to dense ones.
+ * 
+ * @author lackofcheese
+ */
+public class TraceRenderer {
+	/** The most edges drawn in the C-space plot */
+	public static final int MAX_DRAWN_EDGES = 200000;
+	/** The number of cells along each side of the heatmap */
+	public static final int HEATMAP_CELLS = 128;
+	/** The number of cells along each side of the C-space obstacle map */
+	public static final int OBSTACLE_MAP_CELLS = 256;
+
+	/** The colours of edges of each status, indexed by status */
+	private static final Color[] EDGE_COLOURS = { new Color(215, 215, 215),
+			new Color(150, 150, 150), new Color(255, 140, 0) };
+	/** The colour of colliding configurations */
+	private static final Color OBSTACLE_COLOUR = new Color(255, 215, 215);
+	/** The colour of unexpanded nodes */
+	private static final Color NODE_COLOUR = new Color(90, 90, 90);
+	/** The number of shades used for the expanded nodes */
+	private static final int NUM_SHADES = 64;
+
+	/** The width of the drawing area, in pixels */
+	private int width = 1;
+	/** The height of the drawing area, in pixels */
+	private int height = 1;
+
+	/**
+	 * Sets the size of the area being drawn on.
+	 * 
+	 * @param width
+	 *            the width, in pixels.
+	 * @param height
+	 *            the height, in pixels.
+	 */
+	public void setSize(int width, int height) {
+		this.width = Math.max(1, width);
+		this.height = Math.max(1, height);
+	}
+
+	/**
+	 * Works out which configurations collide, on a grid of
+	 * OBSTACLE_MAP_CELLS by OBSTACLE_MAP_CELLS cells, as a backdrop for the
+	 * C-space plot; colliding cells are pink, and the rest white.
+	 * 
+	 * @param checker
+	 *            the checker to test the centre of each cell with.
+	 * @return the map, with the first angle across and the second angle up.
+	 */
+	public static BufferedImage computeObstacleMap(StateChecker checker) {
+		int n = OBSTACLE_MAP_CELLS;
+		BufferedImage map = new BufferedImage(n, n,
+				BufferedImage.TYPE_INT_RGB);
+		int free = Color.WHITE.getRGB();
+		int blocked = OBSTACLE_COLOUR.getRGB();
+		for (int row = 0; row < n; row++) {
+			double angle2 = Math.PI - (row + 0.5) * 2 * Math.PI / n;
+			for (int col = 0; col < n; col++) {
+				double angle1 = (col + 0.5) * 2 * Math.PI / n;
+				map.setRGB(col, row, checker.isValidState(angle1, angle2) ? free
+						: blocked);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Draws the roadmap, search and path of the given trace in C-space.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param trace
+	 *            the trace to draw.
+	 * @param obstacleMap
+	 *            the map of colliding configurations, as per
+	 *            computeObstacleMap, or null to leave the background white.
+	 */
+	public void paintCSpace(Graphics2D g2, SearchTrace trace,
+			BufferedImage obstacleMap) {
+		if (obstacleMap != null) {
+			g2.drawImage(obstacleMap, 0, 0, width, height, null);
+		} else {
+			g2.setColor(Color.WHITE);
+			g2.fillRect(0, 0, width, height);
+		}
+
+		int numNodes = trace.getNumNodes();
+		float[] xs = new float[numNodes];
+		float[] ys = new float[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			xs[node] = toX(trace.getAngle1(node));
+			ys[node] = toY(trace.getAngle2(node));
+		}
+
+		g2.setStroke(new BasicStroke(1));
+		Path2D.Float[] edges = new Path2D.Float[EDGE_COLOURS.length];
+		for (int status = 0; status < edges.length; status++) {
+			edges[status] = new Path2D.Float();
+		}
+		int numEdges = trace.getNumEdges();
+		int stride = (numEdges + MAX_DRAWN_EDGES - 1) / MAX_DRAWN_EDGES;
+		for (int e = 0; e < numEdges; e += Math.max(1, stride)) {
+			int from = trace.getEdgeFrom(e);
+			int to = trace.getEdgeTo(e);
+			if ((int) xs[from] == (int) xs[to]
+					&& (int) ys[from] == (int) ys[to]) {
+				continue;
+			}
+			int status = trace.getEdgeStatus(e);
+			if (status < 0 || status >= edges.length) {
+				status = Roadmap.UNCHECKED;
+			}
+			addSegment(edges[status], xs[from], ys[from], xs[to], ys[to]);
+		}
+		for (int status = 0; status < edges.length; status++) {
+			g2.setColor(EDGE_COLOURS[status]);
+			g2.draw(edges[status]);
+		}
+
+		BitSet drawn = new BitSet(width * height);
+		g2.setColor(NODE_COLOUR);
+		for (int node = 0; node < numNodes; node++) {
+			int x = (int) xs[node];
+			int y = (int) ys[node];
+			if (x >= 0 && x < width && y >= 0 && y < height
+					&& !drawn.get(y * width + x)) {
+				drawn.set(y * width + x);
+				g2.fillRect(x, y, 1, 1);
+			}
+		}
+
+		drawn.clear();
+		Color[] shades = new Color[NUM_SHADES];
+		for (int i = 0; i < NUM_SHADES; i++) {
+			float t = (float) i / (NUM_SHADES - 1);
+			shades[i] = new Color(0, t, 1 - t);
+		}
+		int numExpanded = trace.getNumExpanded();
+		for (int i = 0; i < numExpanded; i++) {
+			int node = trace.getExpanded(i);
+			int x = (int) xs[node];
+			int y = (int) ys[node];
+			if (x < 0 || x >= width || y < 0 || y >= height
+					|| drawn.get(y * width + x)) {
+				continue;
+			}
+			drawn.set(y * width + x);
+			g2.setColor(shades[(int) ((long) i * (NUM_SHADES - 1) / Math
+					.max(1, numExpanded - 1))]);
+			g2.fillRect(x - 1, y - 1, 3, 3);
+		}
+
+		if (trace.getPathLength() > 1) {
+			Path2D.Float path = new Path2D.Float();
+			for (int i = 0; i < trace.getPathLength() - 1; i++) {
+				int from = trace.getPathNode(i);
+				int to = trace.getPathNode(i + 1);
+				addSegment(path, xs[from], ys[from], xs[to], ys[to]);
+			}
+			g2.setStroke(new BasicStroke(2));
+			g2.setColor(Color.BLACK);
+			g2.draw(path);
+		}
+
+		g2.setColor(Color.blue);
+		paintMarker(g2, xs[trace.getStartNode()], ys[trace.getStartNode()]);
+		g2.setColor(Color.green);
+		paintMarker(g2, xs[trace.getGoalNode()], ys[trace.getGoalNode()]);
+	}
+
+	/**
+	 * Draws a marker at the given configuration in C-space, in the current
+	 * colour.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param s
+	 *            the configuration to mark.
+	 */
+	public void paintCSpaceState(Graphics2D g2, RobotArmState s) {
+		paintMarker(g2, toX(s.getAngle1()), toY(s.getAngle2()));
+	}
+
+	/**
+	 * Draws a heatmap of where the end of the arm is at the nodes of the
+	 * given trace, over whatever has already been drawn.
+	 * 
+	 * @param g2
+	 *            the graphics to draw with.
+	 * @param trace
+	 *            the trace to draw.
+	 * @param length1
+	 *            the length of the first rod.
+	 * @param length2
+	 *            the length of the second rod.
+	 */
+	public void paintHeatmap(Graphics2D g2, SearchTrace trace,
+			double length1, double length2) {
+		int n = HEATMAP_CELLS;
+		int[] nodeCounts = new int[n * n];
+		int[] expandedCounts = new int[n * n];
+		int numNodes = trace.getNumNodes();
+		int[] cells = new int[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			double angle1 = trace.getAngle1(node);
+			double angle12 = angle1 + trace.getAngle2(node);
+			double x = RobotArmState.BASE_X + length1 * Math.cos(angle1)
+					+ length2 * Math.cos(angle12);
+			double y = RobotArmState.BASE_Y + length1 * Math.sin(angle1)
+					+ length2 * Math.sin(angle12);
+			int col = (int) Math.floor(x * n);
+			int row = n - 1 - (int) Math.floor(y * n);
+			if (col < 0 || col >= n || row < 0 || row >= n) {
+				cells[node] = -1;
+			} else {
+				cells[node] = row * n + col;
+				nodeCounts[cells[node]]++;
+			}
+		}
+		for (int i = 0; i < trace.getNumExpanded(); i++) {
+			int cell = cells[trace.getExpanded(i)];
+			if (cell >= 0) {
+				expandedCounts[cell]++;
+			}
+		}
+
+		double nodeScale = 1 / Math.log1p(max(nodeCounts));
+		double expandedScale = 1 / Math.log1p(Math.max(1,
+				max(expandedCounts)));
+		BufferedImage heatmap = new BufferedImage(n, n,
+				BufferedImage.TYPE_INT_ARGB);
+		for (int cell = 0; cell < n * n; cell++) {
+			if (nodeCounts[cell] == 0) {
+				continue;
+			}
+			double tNodes = Math.log1p(nodeCounts[cell]) * nodeScale;
+			double tExpanded = Math.log1p(expandedCounts[cell])
+					* expandedScale;
+			int alpha = (int) (60 + 160 * Math.max(tNodes, tExpanded));
+			int green = (int) (255 * tExpanded);
+			int blue = (int) (255 * tNodes * (1 - tExpanded));
+			heatmap.setRGB(cell % n, cell / n, alpha << 24 | green << 8
+					| blue);
+		}
+		g2.drawImage(heatmap, 0, 0, width, height, null);
+	}
+
+	/**
+	 * Returns the largest of the given counts, or 1 if they are all 0.
+	 */
+	private static int max(int[] counts) {
+		int max = 1;
+		for (int count : counts) {
+			max = Math.max(max, count);
+		}
+		return max;
+	}
+
+	/**
+	 * Adds a segment between the given points to the given path. If the
+	 * segment is shorter going the other way around in the first angle, it
+	 * is added as two pieces, each running off a side of the plot.
+	 */
+	private void addSegment(Path2D.Float path, float x0, float y0, float x1,
+			float y1) {
+		float dx = x1 - x0;
+		if (Math.abs(dx) > width / 2f) {
+			float wrapped = dx - Math.signum(dx) * width;
+			path.moveTo(x0, y0);
+			path.lineTo(x0 + wrapped, y1);
+			path.moveTo(x1 - wrapped, y0);
+			path.lineTo(x1, y1);
+		} else {
+			path.moveTo(x0, y0);
+			path.lineTo(x1, y1);
+		}
+	}
+
+	/**
+	 * Draws a small circle centred on the given point.
+	 */
+	private void paintMarker(Graphics2D g2, float x, float y) {
+		g2.fillOval((int) x - 4, (int) y - 4, 9, 9);
+	}
+
+	/**
+	 * Returns the x coordinate in the plot of the given first angle.
+	 */
+	private float toX(double angle1) {
+		double a = angle1 - 2 * Math.PI * Math.floor(angle1 / (2 * Math.PI));
+		return (float) (a / (2 * Math.PI) * width);
+	}
+
+	/**
+	 * Returns the y coordinate in the plot of the given second angle.
+	 */
+	private float toY(double angle2) {
+		return (float) ((Math.PI - angle2) / (2 * Math.PI) * height);
+	}
+}
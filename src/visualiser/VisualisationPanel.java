@@ -4,34 +4,61 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 import javax.swing.JComponent;
 import javax.swing.Timer;
 
-import tutorial2.Obstacle;
+import tutorial2.CollisionChecker;
 import tutorial2.ProblemSpec;
 import tutorial2.RobotArmState;
+import tutorial2.SearchTrace;
 import tutorial2.StateTools;
 
 public class VisualisationPanel extends JComponent {
 	/** UID, as required by Swing */
 	private static final long serialVersionUID = -4286532773714402501L;
 
+	/** Overlay mode that draws the workspace alone */
+	public static final int OVERLAY_NONE = 0;
+	/** Overlay mode that draws the trace in C-space, instead of the workspace */
+	public static final int OVERLAY_CSPACE = 1;
+	/** Overlay mode that draws a heatmap of the trace over the workspace */
+	public static final int OVERLAY_HEATMAP = 2;
+
 	private ProblemSpec problemSpec = new ProblemSpec();
 	private Visualiser visualiser;
 
-	private AffineTransform translation = AffineTransform.getTranslateInstance(
-			0, -1);
-	private AffineTransform transform = null;
+	private ArmRenderer renderer = new ArmRenderer();
+	private TraceRenderer traceRenderer = new TraceRenderer();
+
+	/** The search trace to overlay, or null */
+	private SearchTrace trace;
+	/** How the trace is overlaid; one of the OVERLAY constants */
+	private int overlay = OVERLAY_NONE;
+	/** The colliding configurations, for the C-space plot; made on first use */
+	private BufferedImage obstacleMap;
 
-	private RobotArmState currentState;
+	/** The solution path, as of the last call to updateFrames */
+	private List<RobotArmState> path;
+	/**
+	 * The joint and end coordinates of the arm in every frame of the solution
+	 * at the current resolution, four floats per frame, or null if there's no
+	 * solution.
+	 */
+	private float[] frames;
+
+	/**
+	 * Everything drawn under the moving arm: the obstacles, and when not
+	 * animating, the solution trail or the initial and goal states. This
+	 * only changes when the panel is resized or the data changes, so it is
+	 * drawn once and reused until invalidateStaticLayer is called.
+	 */
+	private BufferedImage staticLayer;
+	private boolean staticLayerValid = false;
 	private boolean animating = false;
 	private boolean displayingSolution = false;
 	private Timer animationTimer;
@@ -52,6 +79,7 @@ public class VisualisationPanel extends JComponent {
 
 	public void setDisplayingSolution(boolean displayingSolution) {
 		this.displayingSolution = displayingSolution;
+		invalidateStaticLayer();
 		repaint();
 	}
 
@@ -59,6 +87,34 @@ public class VisualisationPanel extends JComponent {
 		return displayingSolution;
 	}
 
+	/**
+	 * Sets the search trace to overlay; this must be called, with null if
+	 * need be, whenever a new problem is loaded.
+	 */
+	public void setTrace(SearchTrace trace) {
+		this.trace = trace;
+		obstacleMap = null;
+		if (trace == null) {
+			overlay = OVERLAY_NONE;
+		}
+		invalidateStaticLayer();
+		repaint();
+	}
+
+	public SearchTrace getTrace() {
+		return trace;
+	}
+
+	public void setOverlay(int overlay) {
+		this.overlay = overlay;
+		invalidateStaticLayer();
+		repaint();
+	}
+
+	public int getOverlay() {
+		return trace == null ? OVERLAY_NONE : overlay;
+	}
+
 	public void setFramerate(int framerate) {
 		boolean mustRestart = (framePeriod == Integer.MAX_VALUE);
 		if (framerate > 0) {
@@ -79,6 +135,7 @@ public class VisualisationPanel extends JComponent {
 
 	public void setSamplingPeriod(int samplingPeriod) {
 		this.samplingPeriod = samplingPeriod;
+		invalidateStaticLayer();
 		if (displayingSolution) {
 			repaint();
 		}
@@ -87,10 +144,10 @@ public class VisualisationPanel extends JComponent {
 	public void setResolution(int resolution) {
 		int oldResolution = this.resolution;
 		this.resolution = resolution;
+		updateFrames();
 		if (!problemSpec.solutionLoaded()) {
 			return;
 		}
-		maxFrameNumber = resolution * (problemSpec.getPath().size() - 1);
 		if (!animating) {
 			return;
 		}
@@ -124,8 +181,8 @@ public class VisualisationPanel extends JComponent {
 			animationTimer.stop();
 		}
 		animating = true;
+		invalidateStaticLayer();
 		gotoFrame(0);
-		maxFrameNumber = resolution * (problemSpec.getPath().size() - 1);
 		animationTimer = new Timer(framePeriod, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
@@ -143,16 +200,35 @@ public class VisualisationPanel extends JComponent {
 		visualiser.updateFrameSlider();
 	}
 
+	/**
+	 * Works out the arm coordinates for every frame of the loaded solution at
+	 * the current resolution; this must be called whenever the solution or
+	 * the resolution changes.
+	 */
+	public void updateFrames() {
+		invalidateStaticLayer();
+		if (!problemSpec.solutionLoaded() || resolution <= 0
+				|| problemSpec.getPath().isEmpty()) {
+			path = null;
+			frames = null;
+			maxFrameNumber = 0;
+			return;
+		}
+		path = problemSpec.getPath();
+		maxFrameNumber = resolution * (path.size() - 1);
+		frames = ArmRenderer.computeFrames(path, problemSpec.getLength1(),
+				problemSpec.getLength2(), resolution);
+	}
+
 	public RobotArmState getState(int frameNumber) {
-		double stepIndex = ((double) frameNumber) / resolution;
-		int flooredIndex = (int) Math.floor(stepIndex);
-		if (flooredIndex == stepIndex) {
-			return problemSpec.getPath().get(flooredIndex);
+		int stepIndex = frameNumber / resolution;
+		int remainder = frameNumber % resolution;
+		if (remainder == 0) {
+			return path.get(stepIndex);
 		}
-		RobotArmState s0 = problemSpec.getPath().get(flooredIndex);
-		RobotArmState s1 = problemSpec.getPath().get(flooredIndex + 1);
-		double t = stepIndex - flooredIndex;
-		return StateTools.interpolate(s0, s1, t);
+		RobotArmState s0 = path.get(stepIndex);
+		RobotArmState s1 = path.get(stepIndex + 1);
+		return StateTools.interpolate(s0, s1, (double) remainder / resolution);
 	}
 
 	public void gotoFrame(int frameNumber) {
@@ -162,7 +238,6 @@ public class VisualisationPanel extends JComponent {
 		}
 		this.frameNumber = frameNumber;
 		visualiser.setFrameNumber(frameNumber);
-		currentState = getState(frameNumber);
 		repaint();
 	}
 
@@ -188,6 +263,7 @@ public class VisualisationPanel extends JComponent {
 			animationTimer.stop();
 		}
 		animating = false;
+		invalidateStaticLayer();
 		visualiser.setPlaying(false);
 		frameNumber = null;
 	}
@@ -197,26 +273,74 @@ public class VisualisationPanel extends JComponent {
 	}
 
 	public void calculateTransform() {
-		transform = AffineTransform.getScaleInstance(getWidth(),
-				-getHeight());
-		transform.concatenate(translation);
+		renderer.setSize(getWidth(), getHeight());
+		traceRenderer.setSize(getWidth(), getHeight());
 	}
 
 	public void paintState(Graphics2D g2, RobotArmState s) {
-		if (s == null) {
-			return;
+		renderer.paintState(g2, s);
+	}
+
+	/**
+	 * Paints the arm as it is in the given frame of the solution.
+	 */
+	public void paintFrame(Graphics2D g2, int frameNumber) {
+		renderer.paintFrame(g2, frames, frameNumber);
+	}
+
+	/**
+	 * Marks the static layer as out of date, so that it is redrawn on the
+	 * next repaint; this must be called whenever anything drawn on it
+	 * changes, other than the size of the panel.
+	 */
+	public void invalidateStaticLayer() {
+		staticLayerValid = false;
+	}
+
+	/**
+	 * Redraws the static layer, at the current size of the panel.
+	 */
+	private void paintStaticLayer() {
+		int width = Math.max(1, getWidth());
+		int height = Math.max(1, getHeight());
+		if (staticLayer == null || staticLayer.getWidth() != width
+				|| staticLayer.getHeight() != height) {
+			staticLayer = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
 		}
-		Path2D.Float path = new Path2D.Float();
-
-		List<Point2D> points = s.getPoints();
-		Point2D p = points.get(0);
-		path.moveTo(p.getX(), p.getY());
-		for (int i = 1; i < points.size(); i++) {
-			p = points.get(i);
-			path.lineTo(p.getX(), p.getY());
+		Graphics2D g2 = staticLayer.createGraphics();
+		try {
+			if (getOverlay() == OVERLAY_CSPACE) {
+				if (obstacleMap == null) {
+					obstacleMap = TraceRenderer
+							.computeObstacleMap(new CollisionChecker(
+									problemSpec));
+				}
+				traceRenderer.paintCSpace(g2, trace, obstacleMap);
+				return;
+			}
+			renderer.paintWorkspace(g2, width, height,
+					problemSpec.getObstacles());
+			if (getOverlay() == OVERLAY_HEATMAP) {
+				traceRenderer.paintHeatmap(g2, trace,
+						problemSpec.getLength1(), problemSpec.getLength2());
+			}
+			if (animating) {
+				return;
+			}
+			if (displayingSolution) {
+				renderer.paintTrail(g2, frames, samplingPeriod);
+			} else {
+				g2.setStroke(new BasicStroke(2));
+				g2.setColor(Color.blue);
+				paintState(g2, problemSpec.getInitialState());
+
+				g2.setColor(Color.green);
+				paintState(g2, problemSpec.getGoalState());
+			}
+		} finally {
+			g2.dispose();
 		}
-		path.transform(transform);
-		g2.draw(path);
 	}
 
 	public void paintComponent(Graphics graphics) {
@@ -225,40 +349,22 @@ public class VisualisationPanel extends JComponent {
 			return;
 		}
 		calculateTransform();
-		Graphics2D g2 = (Graphics2D) graphics;
-		g2.setColor(Color.WHITE);
-		g2.fillRect(0, 0, getWidth(), getHeight());
-
-		List<Obstacle> obstacles = problemSpec.getObstacles();
-		if (obstacles != null) {
-			g2.setColor(Color.red);
-			for (Obstacle obs : problemSpec.getObstacles()) {
-				Shape transformed = transform.createTransformedShape(obs
-						.getRect());
-				g2.fill(transformed);
-			}
+		if (!staticLayerValid || staticLayer.getWidth() != getWidth()
+				|| staticLayer.getHeight() != getHeight()) {
+			paintStaticLayer();
+			staticLayerValid = true;
 		}
+		Graphics2D g2 = (Graphics2D) graphics;
+		g2.drawImage(staticLayer, 0, 0, null);
 
-		g2.setStroke(new BasicStroke(2));
-		if (!animating) {
-			if (displayingSolution) {
-				for (int i = 0; i < maxFrameNumber; i += samplingPeriod) {
-					float t = (float) i / maxFrameNumber;
-					g2.setColor(new Color(0, t, 1 - t));
-					paintState(g2, getState(i));
-				}
-				g2.setColor(Color.green);
-				paintState(g2, getState(maxFrameNumber));
+		if (animating && frameNumber != null) {
+			g2.setStroke(new BasicStroke(2));
+			g2.setColor(Color.blue);
+			if (getOverlay() == OVERLAY_CSPACE) {
+				traceRenderer.paintCSpaceState(g2, getState(frameNumber));
 			} else {
-				g2.setColor(Color.blue);
-				paintState(g2, problemSpec.getInitialState());
-
-				g2.setColor(Color.green);
-				paintState(g2, problemSpec.getGoalState());
+				paintFrame(g2, frameNumber);
 			}
-		} else {
-			g2.setColor(Color.blue);
-			paintState(g2, currentState);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -40,6 +40,8 @@ import javax.swing.border.EtchedBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import tutorial2.SearchTrace;
+
 public class Visualiser {
 	private Container container;
 
@@ -50,11 +52,12 @@ public class Visualiser {
 
 	private JMenuBar menuBar;
 	private JMenu fileMenu;
-	private JMenuItem loadProblemItem, loadSolutionItem, exitItem; // assumeDirectSolutionItem
+	private JMenuItem loadProblemItem, loadSolutionItem, loadTraceItem, exitItem; // assumeDirectSolutionItem
 	private JMenu animationMenu;
 	private JMenuItem initialiseItem, playPauseItem, stopItem;
 	private JMenu displayMenu;
 	private JMenuItem problemItem, solutionItem;
+	private JMenuItem workspaceItem, cspaceItem, heatmapItem;
 
 	private JPanel animationControls;
 	private JSlider manualSlider;
@@ -112,6 +115,17 @@ public class Visualiser {
 			} else if (cmd.equals("Load solution")) {
 				setAnimating(false);
 				loadSolution();
+			} else if (cmd.equals("Load trace")) {
+				loadTrace();
+			} else if (cmd.equals("Workspace")) {
+				vp.setOverlay(VisualisationPanel.OVERLAY_NONE);
+				setInfoText();
+			} else if (cmd.equals("Roadmap in C-space")) {
+				vp.setOverlay(VisualisationPanel.OVERLAY_CSPACE);
+				setInfoText();
+			} else if (cmd.equals("Roadmap heatmap")) {
+				vp.setOverlay(VisualisationPanel.OVERLAY_HEATMAP);
+				setInfoText();
 			} else if (cmd.equals("Exit")) {
 				container.setVisible(false);
 				System.exit(0);
@@ -298,6 +312,12 @@ public class Visualiser {
 		loadSolutionItem.setEnabled(false);
 		fileMenu.add(loadSolutionItem);
 
+		loadTraceItem = new JMenuItem("Load trace");
+		loadTraceItem.setMnemonic(KeyEvent.VK_T);
+		loadTraceItem.addActionListener(menuListener);
+		loadTraceItem.setEnabled(false);
+		fileMenu.add(loadTraceItem);
+
 		fileMenu.addSeparator();
 		exitItem = new JMenuItem("Exit");
 		exitItem.setMnemonic(KeyEvent.VK_X);
@@ -323,6 +343,25 @@ public class Visualiser {
 		solutionItem.addActionListener(menuListener);
 		solutionItem.setEnabled(false);
 		displayMenu.add(solutionItem);
+
+		displayMenu.addSeparator();
+		workspaceItem = new JMenuItem("Workspace");
+		workspaceItem.setMnemonic(KeyEvent.VK_W);
+		workspaceItem.addActionListener(menuListener);
+		workspaceItem.setEnabled(false);
+		displayMenu.add(workspaceItem);
+
+		cspaceItem = new JMenuItem("Roadmap in C-space");
+		cspaceItem.setMnemonic(KeyEvent.VK_C);
+		cspaceItem.addActionListener(menuListener);
+		cspaceItem.setEnabled(false);
+		displayMenu.add(cspaceItem);
+
+		heatmapItem = new JMenuItem("Roadmap heatmap");
+		heatmapItem.setMnemonic(KeyEvent.VK_H);
+		heatmapItem.addActionListener(menuListener);
+		heatmapItem.setEnabled(false);
+		displayMenu.add(heatmapItem);
 	}
 
 	private void createAnimationMenu() {
@@ -484,6 +523,33 @@ public class Visualiser {
 		loadSolution(f);
 	}
 
+	private void loadTrace(File f) {
+		try {
+			vp.setTrace(SearchTrace.read(f));
+			vp.setOverlay(VisualisationPanel.OVERLAY_CSPACE);
+		} catch (IOException e1) {
+			showFileError(f);
+			vp.setTrace(null);
+		}
+		updateTraceItems();
+		setInfoText();
+	}
+
+	private void loadTrace() {
+		File f = askForFile();
+		if (f == null) {
+			return;
+		}
+		loadTrace(f);
+	}
+
+	private void updateTraceItems() {
+		boolean hasTrace = vp.getTrace() != null;
+		workspaceItem.setEnabled(hasTrace);
+		cspaceItem.setEnabled(hasTrace);
+		heatmapItem.setEnabled(hasTrace);
+	}
+
 	private void playPause() {
 		if (!animating) {
 			setAnimating(true);
@@ -495,6 +561,11 @@ public class Visualiser {
 		if (!hasProblem) {
 			infoLabel.setText("No problem to display.");
 			samplingSpinner.setVisible(false);
+		} else if (vp.getOverlay() == VisualisationPanel.OVERLAY_CSPACE) {
+			infoLabel
+					.setText("Roadmap in C-space: angle 1 across, angle 2 up; "
+							+ "expansions blue to green, blocked edges orange");
+			samplingSpinner.setVisible(false);
 		} else if (animating) {
 			infoLabel
 					.setText("Play the animation, or use the slider to control it manually.");
@@ -512,7 +583,10 @@ public class Visualiser {
 	private void setHasProblem(boolean hasProblem) {
 		this.hasProblem = hasProblem;
 		loadSolutionItem.setEnabled(hasProblem);
+		loadTraceItem.setEnabled(hasProblem);
 		problemItem.setEnabled(hasProblem);
+		vp.setTrace(null);
+		updateTraceItems();
 		setHasSolution(false);
 		setInfoText();
 		vp.repaint();
@@ -524,6 +598,7 @@ public class Visualiser {
 
 	private void setHasSolution(boolean hasSolution) {
 		this.hasSolution = hasSolution;
+		vp.updateFrames();
 		solutionItem.setEnabled(hasSolution);
 		animationMenu.setEnabled(hasSolution);
 		vp.setDisplayingSolution(hasSolution);
@@ -631,6 +706,9 @@ public class Visualiser {
 			if (vis.hasProblem() && args.length >= 2) {
 				vis.loadSolution(new File(args[1]));
 			}
+			if (vis.hasProblem() && args.length >= 3) {
+				vis.loadTrace(new File(args[2]));
+			}
 		}
 		frame.setSize(800, 600);
 		frame.addWindowListener(new WindowAdapter() {